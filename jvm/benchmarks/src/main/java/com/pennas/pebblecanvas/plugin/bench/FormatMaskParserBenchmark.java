@@ -0,0 +1,90 @@
+package com.pennas.pebblecanvas.plugin.bench;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.pennas.pebblecanvas.plugin.core.FormatMaskParser;
+import com.pennas.pebblecanvas.plugin.core.MaskListCache;
+import com.pennas.pebblecanvas.plugin.core.TextPolicy;
+
+/**
+ * Handling the mask list of a text update request: parsing it from scratch (as done for every request before
+ * plans were cached) against finding its cached plan (MaskPlan, which keeps a MaskListCache per definition).
+ * 
+ * Every op starts from a freshly unparcelled mask list, as a real request does; request_only measures just that,
+ * so it can be subtracted from the others. Run with -prof gc to compare bytes allocated per request
+ */
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class FormatMaskParserBenchmark {
+	// a typical watchface layer: a few plain masks, a few with params
+	static final String[] MASKS = { "%A", "%T#max=20;charset=ascii#", "%L", "%E#res=m#", "%R", "%P#width=20#" };
+	
+	public MaskListCache<Object> plans;
+	public String[] previous;
+	public String[] values;
+	
+	@Setup
+	public void setup() {
+		// as MaskPlan: a few mask lists per definition, this request's among them
+		plans = new MaskListCache<Object>(16);
+		plans.put(Arrays.asList("%A", "%T"), new Object());
+		plans.put(request_masks(), new Object());
+		plans.put(Arrays.asList("%L#max=10#"), new Object());
+		previous = new String[] { "Artist", "Title", "Album", "1:23", "2:34", "=====" };
+		values = new String[] { "Artist", "Title", "Album", "1:24", "2:33", "=====" };
+	}
+	
+	/**
+	 * Mask list as unparcelled from a request: new strings each time, so no cached hash codes
+	 */
+	static ArrayList<String> request_masks() {
+		ArrayList<String> list = new ArrayList<String>(MASKS.length);
+		for (String mask : MASKS) {
+			list.add(new String(mask.toCharArray()));
+		}
+		return list;
+	}
+	
+	@Benchmark
+	public ArrayList<String> request_only() {
+		return request_masks();
+	}
+	
+	@Benchmark
+	public void parse(Blackhole bh) {
+		ArrayList<String> format_masks = request_masks();
+		int n = format_masks.size();
+		String[] masks = new String[n];
+		String[] params = new String[n];
+		FormatMaskParser.parse(format_masks, masks, params);
+		for (int i = 0; i < n; i++) {
+			bh.consume(TextPolicy.parse(params[i]));
+		}
+		bh.consume(masks);
+	}
+	
+	@Benchmark
+	public Object plan_cache_hit() {
+		return plans.get(request_masks());
+	}
+	
+	@Benchmark
+	public int[] changed_indices() {
+		return FormatMaskParser.changed_indices(previous, values);
+	}
+}
@@ -0,0 +1,61 @@
+package com.pennas.pebblecanvas.plugin.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.pennas.pebblecanvas.plugin.core.GBitmapEncoder;
+
+/**
+ * Quantizing, dithering and packing a full-screen image (e.g. album art) into Pebble-native formats
+ */
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class GBitmapEncoderBenchmark {
+	private static final int WIDTH = 144;
+	private static final int HEIGHT = 168;
+	
+	public int[] argb;
+	
+	// smooth gradients plus some noise: the worst case for dithering, like a photo
+	@Setup
+	public void setup() {
+		argb = new int[WIDTH * HEIGHT];
+		long seed = 12345;
+		for (int y = 0; y < HEIGHT; y++) {
+			for (int x = 0; x < WIDTH; x++) {
+				seed = seed * 6364136223846793005L + 1442695040888963407L;
+				int noise = (int) (seed >>> 59);
+				int r = (x * 255 / WIDTH + noise) & 0xff;
+				int g = (y * 255 / HEIGHT + noise) & 0xff;
+				int b = ((x + y) * 255 / (WIDTH + HEIGHT)) & 0xff;
+				argb[y * WIDTH + x] = 0xff000000 | (r << 16) | (g << 8) | b;
+			}
+		}
+	}
+	
+	@Benchmark
+	public byte[] encode_1bit() {
+		return GBitmapEncoder.encode_1bit(argb, WIDTH, HEIGHT);
+	}
+	
+	@Benchmark
+	public byte[] encode_8bit() {
+		return GBitmapEncoder.encode_8bit(argb, WIDTH, HEIGHT);
+	}
+	
+	@Benchmark
+	public int[] fit() {
+		return GBitmapEncoder.fit(500, 500, WIDTH, HEIGHT);
+	}
+}
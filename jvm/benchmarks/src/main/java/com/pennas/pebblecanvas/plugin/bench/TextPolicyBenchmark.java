@@ -0,0 +1,55 @@
+package com.pennas.pebblecanvas.plugin.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.pennas.pebblecanvas.plugin.core.TextPolicy;
+
+/**
+ * Applying length/charset limits to a value: the cached case (same title on every refresh) and the uncached case
+ * (a new title each time, cycling through more titles than the cache holds)
+ */
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TextPolicyBenchmark {
+	private static final int DISTINCT_TITLES = 256;
+	
+	public TextPolicy policy;
+	public String title;
+	public String[] titles;
+	private int next = 0;
+	
+	@Setup
+	public void setup() {
+		policy = TextPolicy.parse("max=20;charset=ascii");
+		title = "Bj\u00f6rk \u2013 J\u00f3ga (Howie B Main Mix)";
+		titles = new String[DISTINCT_TITLES];
+		for (int i = 0; i < DISTINCT_TITLES; i++) {
+			titles[i] = "Caf\u00e9 Tac\u00faba \u2013 Track " + i + " (Live at the Z\u00f3calo)";
+		}
+		policy.apply(title);
+	}
+	
+	@Benchmark
+	public String apply_cached() {
+		return policy.apply(title);
+	}
+	
+	@Benchmark
+	public String apply_uncached() {
+		String value = titles[next];
+		next = (next + 1) % DISTINCT_TITLES;
+		return policy.apply(value);
+	}
+}
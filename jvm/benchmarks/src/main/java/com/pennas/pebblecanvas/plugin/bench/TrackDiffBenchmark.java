@@ -0,0 +1,55 @@
+package com.pennas.pebblecanvas.plugin.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.pennas.canvasnowplayingplugin.core.TrackDiff;
+
+/**
+ * Track comparison for each player broadcast. Most broadcasts repeat the current track
+ */
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TrackDiffBenchmark {
+	public String artist, title, album;
+	// as read from a broadcast: equal, but not the same instances
+	public String same_artist, same_title, same_album;
+	public String new_title;
+	
+	@Setup
+	public void setup() {
+		artist = "Boards of Canada";
+		title = "Roygbiv";
+		album = "Music Has the Right to Children";
+		same_artist = new String(artist.toCharArray());
+		same_title = new String(title.toCharArray());
+		same_album = new String(album.toCharArray());
+		new_title = "Telephasic Workshop";
+	}
+	
+	@Benchmark
+	public boolean same_track() {
+		return TrackDiff.changed(artist, title, album, same_artist, same_title, same_album);
+	}
+	
+	@Benchmark
+	public boolean missing_fields() {
+		return TrackDiff.changed(artist, title, album, same_artist, same_title, null);
+	}
+	
+	@Benchmark
+	public boolean new_track() {
+		return TrackDiff.changed(artist, title, album, same_artist, new_title, same_album);
+	}
+}
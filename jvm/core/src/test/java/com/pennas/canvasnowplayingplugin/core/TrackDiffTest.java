@@ -0,0 +1,30 @@
+package com.pennas.canvasnowplayingplugin.core;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class TrackDiffTest {
+	@Test
+	public void missing_field_is_not_a_change() {
+		assertFalse(TrackDiff.changed("Artist", null));
+		assertFalse(TrackDiff.changed(null, null));
+	}
+	
+	@Test
+	public void field_changes() {
+		assertFalse(TrackDiff.changed("Artist", "Artist"));
+		assertTrue(TrackDiff.changed("Artist", "Other"));
+		assertTrue(TrackDiff.changed(null, "Artist"));
+	}
+	
+	@Test
+	public void track_changes() {
+		assertFalse(TrackDiff.changed("A", "T", "L", "A", "T", "L"));
+		assertFalse(TrackDiff.changed("A", "T", "L", null, null, null));
+		assertFalse(TrackDiff.changed("A", "T", "L", "A", null, "L"));
+		assertTrue(TrackDiff.changed("A", "T", "L", "A", "T2", "L"));
+		assertTrue(TrackDiff.changed("A", "T", null, null, null, "L"));
+	}
+}
@@ -0,0 +1,36 @@
+package com.pennas.pebblecanvas.plugin.core;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class CacheFilesTest {
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	@Test
+	public void sha1_hex_is_lower_case_hex() throws Exception {
+		assertEquals("a9993e364706816aba3e25717850c26c9cd0d89d", CacheFiles.sha1_hex("abc".getBytes("UTF-8")));
+	}
+	
+	@Test
+	public void sort_oldest_first_by_last_modified() throws IOException {
+		File a = folder.newFile("a");
+		File b = folder.newFile("b");
+		File c = folder.newFile("c");
+		a.setLastModified(3000000);
+		b.setLastModified(1000000);
+		c.setLastModified(2000000);
+		
+		File[] files = { a, b, c };
+		CacheFiles.sort_oldest_first(files);
+		assertEquals(b, files[0]);
+		assertEquals(c, files[1]);
+		assertEquals(a, files[2]);
+	}
+}
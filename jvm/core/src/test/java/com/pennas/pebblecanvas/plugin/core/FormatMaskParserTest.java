@@ -0,0 +1,54 @@
+package com.pennas.pebblecanvas.plugin.core;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class FormatMaskParserTest {
+	@Test
+	public void parse_splits_base_mask_and_param() {
+		List<String> format_masks = Arrays.asList("%A", "%T#max=10#", "%P#width=20;res=m#");
+		String[] masks = new String[3];
+		String[] params = new String[3];
+		FormatMaskParser.parse(format_masks, masks, params);
+		
+		assertArrayEquals(new String[] { "%A", "%T", "%P" }, masks);
+		assertArrayEquals(new String[] { null, "max=10", "width=20;res=m" }, params);
+	}
+	
+	@Test
+	public void parse_leaves_unterminated_param_alone() {
+		String[] masks = new String[1];
+		String[] params = new String[1];
+		FormatMaskParser.parse(Arrays.asList("%T#max=10"), masks, params);
+		
+		assertEquals("%T#max=10", masks[0]);
+		assertNull(params[0]);
+	}
+	
+	@Test
+	public void changed_indices_none() {
+		String[] previous = { "a", null, "c" };
+		String[] values = { "a", null, "c" };
+		assertNull(FormatMaskParser.changed_indices(previous, values));
+	}
+	
+	@Test
+	public void changed_indices_some() {
+		String[] previous = { "a", "b", null };
+		String[] values = { "a", "x", "c" };
+		assertArrayEquals(new int[] { 1, 2 }, FormatMaskParser.changed_indices(previous, values));
+	}
+	
+	@Test
+	public void changed_indices_all() {
+		String[] previous = { "a", "b" };
+		String[] values = { null, "c" };
+		assertArrayEquals(new int[] { 0, 1 }, FormatMaskParser.changed_indices(previous, values));
+	}
+}
@@ -0,0 +1,85 @@
+package com.pennas.pebblecanvas.plugin.core;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class GBitmapEncoderTest {
+	private static final int WHITE = 0xffffffff;
+	private static final int BLACK = 0xff000000;
+	private static final int TRANSPARENT = 0x00000000;
+	
+	@Test
+	public void fit_keeps_aspect_ratio() {
+		assertArrayEquals(new int[] { 100, 50 }, GBitmapEncoder.fit(100, 50, 144, 168));
+		assertArrayEquals(new int[] { 144, 72 }, GBitmapEncoder.fit(400, 200, 144, 168));
+		assertArrayEquals(new int[] { 84, 168 }, GBitmapEncoder.fit(200, 400, 144, 168));
+		assertArrayEquals(new int[] { 144, 1 }, GBitmapEncoder.fit(1000, 1, 144, 168));
+	}
+	
+	@Test
+	public void header_1bit() {
+		byte[] out = GBitmapEncoder.encode_1bit(new int[33 * 2], 33, 2);
+		// rows padded to 32 bits
+		assertEquals(GBitmapEncoder.HEADER_SIZE + 8 * 2, out.length);
+		assertEquals(8, short_at(out, 0));
+		assertEquals(0x1000, short_at(out, 2));
+		assertEquals(0, short_at(out, 4));
+		assertEquals(0, short_at(out, 6));
+		assertEquals(33, short_at(out, 8));
+		assertEquals(2, short_at(out, 10));
+	}
+	
+	@Test
+	public void header_8bit() {
+		byte[] out = GBitmapEncoder.encode_8bit(new int[5 * 3], 5, 3);
+		assertEquals(GBitmapEncoder.HEADER_SIZE + 5 * 3, out.length);
+		assertEquals(5, short_at(out, 0));
+		assertEquals(0x1002, short_at(out, 2));
+		assertEquals(5, short_at(out, 8));
+		assertEquals(3, short_at(out, 10));
+	}
+	
+	@Test
+	public void encode_1bit_black_white_lsb_first() {
+		int[] argb = { WHITE, BLACK, BLACK, WHITE, TRANSPARENT, BLACK, BLACK, BLACK, WHITE };
+		byte[] out = GBitmapEncoder.encode_1bit(argb, 9, 1);
+		// transparent is composited onto white
+		assertEquals((byte) 0x19, out[GBitmapEncoder.HEADER_SIZE]);
+		assertEquals((byte) 0x01, out[GBitmapEncoder.HEADER_SIZE + 1]);
+	}
+	
+	@Test
+	public void encode_1bit_dithers_grey() {
+		int w = 16;
+		int[] argb = new int[w * w];
+		Arrays.fill(argb, 0xff808080);
+		byte[] out = GBitmapEncoder.encode_1bit(argb, w, w);
+		int white = 0;
+		for (int i = GBitmapEncoder.HEADER_SIZE; i < out.length; i++) {
+			white += Integer.bitCount(out[i] & 0xff);
+		}
+		// about half the pixels
+		assertEquals(w * w / 2, white, w);
+	}
+	
+	@Test
+	public void encode_8bit_palette() {
+		int[] argb = { 0xffff0000, 0xff00ff00, 0xff0000ff, WHITE, BLACK, TRANSPARENT };
+		byte[] out = GBitmapEncoder.encode_8bit(argb, 6, 1);
+		int p = GBitmapEncoder.HEADER_SIZE;
+		assertEquals((byte) 0xf0, out[p]);
+		assertEquals((byte) 0xcc, out[p + 1]);
+		assertEquals((byte) 0xc3, out[p + 2]);
+		assertEquals((byte) 0xff, out[p + 3]);
+		assertEquals((byte) 0xc0, out[p + 4]);
+		assertEquals((byte) 0x00, out[p + 5]);
+	}
+	
+	private static int short_at(byte[] out, int offset) {
+		return (out[offset] & 0xff) | ((out[offset + 1] & 0xff) << 8);
+	}
+}
@@ -0,0 +1,42 @@
+package com.pennas.pebblecanvas.plugin.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class MaskListCacheTest {
+	@Test
+	public void get_matches_equal_lists() {
+		MaskListCache<String> cache = new MaskListCache<String>(4);
+		cache.put(Arrays.asList("%A", "%T"), "plan");
+		assertEquals("plan", cache.get(new ArrayList<String>(Arrays.asList("%A", "%T"))));
+		assertNull(cache.get(Arrays.asList("%T", "%A")));
+	}
+	
+	@Test
+	public void put_copies_key() {
+		MaskListCache<String> cache = new MaskListCache<String>(4);
+		ArrayList<String> masks = new ArrayList<String>(Arrays.asList("%A"));
+		cache.put(masks, "plan");
+		masks.add("%T");
+		assertEquals("plan", cache.get(Arrays.asList("%A")));
+	}
+	
+	@Test
+	public void drops_least_recently_used() {
+		MaskListCache<String> cache = new MaskListCache<String>(2);
+		cache.put(Arrays.asList("%A"), "a");
+		cache.put(Arrays.asList("%T"), "t");
+		cache.get(Arrays.asList("%A"));
+		cache.put(Arrays.asList("%L"), "l");
+		
+		assertEquals(2, cache.size());
+		assertEquals("a", cache.get(Arrays.asList("%A")));
+		assertNull(cache.get(Arrays.asList("%T")));
+		assertEquals("l", cache.get(Arrays.asList("%L")));
+	}
+}
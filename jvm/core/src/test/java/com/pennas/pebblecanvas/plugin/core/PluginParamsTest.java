@@ -0,0 +1,34 @@
+package com.pennas.pebblecanvas.plugin.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+public class PluginParamsTest {
+	@Test
+	public void get_finds_each_option() {
+		String param = "max=10; charset = ascii ;player=com.android.music";
+		assertEquals("10", PluginParams.get(param, "max"));
+		assertEquals("ascii", PluginParams.get(param, "charset"));
+		assertEquals("com.android.music", PluginParams.get(param, "player"));
+	}
+	
+	@Test
+	public void get_missing_option() {
+		assertNull(PluginParams.get(null, "max"));
+		assertNull(PluginParams.get("", "max"));
+		assertNull(PluginParams.get("maxx=10;res=m", "max"));
+		assertNull(PluginParams.get("max;res=m", "max"));
+	}
+	
+	@Test
+	public void get_value_may_contain_assign() {
+		assertEquals("a=b", PluginParams.get("key=a=b", "key"));
+	}
+	
+	@Test
+	public void get_empty_value() {
+		assertEquals("", PluginParams.get("max=;res=m", "max"));
+	}
+}
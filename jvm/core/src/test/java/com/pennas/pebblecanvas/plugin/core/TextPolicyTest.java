@@ -0,0 +1,79 @@
+package com.pennas.pebblecanvas.plugin.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+public class TextPolicyTest {
+	@Test
+	public void parse_without_options() {
+		assertNull(TextPolicy.parse(null));
+		assertNull(TextPolicy.parse("player=com.android.music"));
+		assertNull(TextPolicy.parse("max=abc;charset=ebcdic"));
+		assertNotNull(TextPolicy.parse("max=10"));
+		assertNotNull(TextPolicy.parse("charset=ASCII"));
+	}
+	
+	@Test
+	public void short_values_unchanged() {
+		TextPolicy policy = TextPolicy.parse("max=10");
+		assertEquals("Short", policy.apply("Short"));
+		assertEquals("Exactly 10", policy.apply("Exactly 10"));
+		assertNull(policy.apply(null));
+	}
+	
+	@Test
+	public void truncates_with_ellipsis() {
+		assertEquals("A long\u2026", TextPolicy.parse("max=7").apply("A long title"));
+		// no unicode ellipsis on the watch if the charset is restricted
+		assertEquals("A lo...", TextPolicy.parse("max=7;charset=ascii").apply("A long title"));
+	}
+	
+	@Test
+	public void short_max_without_ellipsis() {
+		assertEquals("Ab", TextPolicy.parse("max=2;charset=ascii").apply("Abba"));
+		assertEquals("Abb", TextPolicy.parse("max=3;charset=ascii").apply("Abba Gold"));
+		assertEquals("A", TextPolicy.parse("max=1").apply("Abba"));
+	}
+	
+	@Test
+	public void truncates_by_code_point() {
+		String clef = new String(Character.toChars(0x1d11e));
+		assertEquals(clef + clef + "\u2026", TextPolicy.parse("max=3").apply(clef + clef + clef + clef));
+	}
+	
+	@Test
+	public void ascii_transliterates() {
+		TextPolicy policy = TextPolicy.parse("charset=ascii");
+		assertEquals("Beyonce", policy.apply("Beyonc\u00e9"));
+		assertEquals("Strasse", policy.apply("Stra\u00dfe"));
+		assertEquals("Bjork - \"Joga\"", policy.apply("Bj\u00f6rk \u2013 \u201cJ\u00f3ga\u201d"));
+		assertEquals("?", policy.apply("\u6771"));
+	}
+	
+	@Test
+	public void decomposed_accents_dropped() {
+		assertEquals("Beyonce", TextPolicy.parse("charset=ascii").apply("Beyonce\u0301"));
+		assertEquals("Beyonc\u00e9", TextPolicy.parse("charset=latin1").apply("Beyonce\u0301"));
+		// combining mark without a precomposed form
+		assertEquals("q", TextPolicy.parse("charset=ascii").apply("q\u0303"));
+	}
+	
+	@Test
+	public void latin1_keeps_latin1() {
+		TextPolicy policy = TextPolicy.parse("charset=latin1");
+		assertEquals("Beyonc\u00e9", policy.apply("Beyonc\u00e9"));
+		assertEquals("Stra\u00dfe", policy.apply("Stra\u00dfe"));
+		assertEquals("Dvor\u00e1k", policy.apply("Dvo\u0159\u00e1k"));
+	}
+	
+	@Test
+	public void results_are_cached() {
+		TextPolicy policy = TextPolicy.parse("max=20;charset=ascii");
+		String first = policy.apply("Caf\u00e9 del Mar");
+		assertSame(first, policy.apply("Caf\u00e9 del Mar"));
+	}
+}
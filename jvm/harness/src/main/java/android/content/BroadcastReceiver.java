@@ -0,0 +1,14 @@
+package android.content;
+
+public abstract class BroadcastReceiver {
+	public static class PendingResult {
+		public final void finish() { }
+	}
+	
+	public abstract void onReceive(Context context, Intent intent);
+	
+	// receivers are only ever called directly here, never for a real broadcast: nothing to keep alive
+	public final PendingResult goAsync() {
+		return null;
+	}
+}
@@ -0,0 +1,33 @@
+package android.content;
+
+import java.io.FileNotFoundException;
+
+import android.content.pm.ProviderInfo;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+
+public abstract class ContentProvider {
+	private Context context;
+	
+	public void attachInfo(Context context, ProviderInfo info) {
+		if (this.context != null) return;
+		this.context = context;
+		onCreate();
+	}
+	
+	public final Context getContext() {
+		return context;
+	}
+	
+	public abstract boolean onCreate();
+	public abstract Cursor query(Uri uri, String[] projection, String selection, String[] selection_args, String sort_order);
+	public abstract String getType(Uri uri);
+	public abstract Uri insert(Uri uri, ContentValues values);
+	public abstract int delete(Uri uri, String selection, String[] selection_args);
+	public abstract int update(Uri uri, ContentValues values, String selection, String[] selection_args);
+	
+	public ParcelFileDescriptor openFile(Uri uri, String mode) throws FileNotFoundException {
+		throw new FileNotFoundException("No files supported by provider at " + uri);
+	}
+}
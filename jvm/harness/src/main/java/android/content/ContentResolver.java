@@ -0,0 +1,86 @@
+package android.content;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.InputStream;
+import java.util.ArrayList;
+
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+
+/**
+ * Routes to whichever provider the subclass returns for an authority (in place of the system's provider lookup)
+ */
+public abstract class ContentResolver {
+	public static final String SCHEME_CONTENT = "content";
+	public static final String SCHEME_FILE = "file";
+	
+	private static final class Registration {
+		final Uri uri;
+		final boolean descendants;
+		final ContentObserver observer;
+		
+		Registration(Uri uri, boolean descendants, ContentObserver observer) {
+			this.uri = uri;
+			this.descendants = descendants;
+			this.observer = observer;
+		}
+		
+		boolean matches(Uri changed) {
+			String base = uri.toString();
+			String s = changed.toString();
+			return s.equals(base) || (descendants && s.startsWith(base + "/"));
+		}
+	}
+	
+	private final ArrayList<Registration> observers = new ArrayList<Registration>();
+	
+	/**
+	 * @return Provider for the authority, or null if there is none
+	 */
+	protected abstract ContentProvider acquireProvider(String authority);
+	
+	public final Cursor query(Uri uri, String[] projection, String selection, String[] selection_args, String sort_order) {
+		ContentProvider provider = acquireProvider(uri.getAuthority());
+		if (provider == null) return null;
+		return provider.query(uri, projection, selection, selection_args, sort_order);
+	}
+	
+	public final InputStream openInputStream(Uri uri) throws FileNotFoundException {
+		if (SCHEME_FILE.equals(uri.getScheme())) {
+			return new FileInputStream(new File(uri.getPath()));
+		}
+		ContentProvider provider = acquireProvider(uri.getAuthority());
+		if (provider == null) throw new FileNotFoundException("No content provider: " + uri);
+		return new ParcelFileDescriptor.AutoCloseInputStream(provider.openFile(uri, "r"));
+	}
+	
+	public final void registerContentObserver(Uri uri, boolean notify_for_descendants, ContentObserver observer) {
+		synchronized (observers) {
+			observers.add(new Registration(uri, notify_for_descendants, observer));
+		}
+	}
+	
+	public final void unregisterContentObserver(ContentObserver observer) {
+		synchronized (observers) {
+			for (int i = observers.size() - 1; i >= 0; i--) {
+				if (observers.get(i).observer == observer) observers.remove(i);
+			}
+		}
+	}
+	
+	public void notifyChange(Uri uri, ContentObserver observer) {
+		ArrayList<ContentObserver> targets = new ArrayList<ContentObserver>();
+		synchronized (observers) {
+			for (Registration r : observers) {
+				if ( (r.observer != observer) && r.matches(uri) ) targets.add(r.observer);
+			}
+		}
+		for (ContentObserver target : targets) {
+			target.dispatchChange(false, uri);
+		}
+	}
+}
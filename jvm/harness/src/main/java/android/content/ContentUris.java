@@ -0,0 +1,14 @@
+package android.content;
+
+import android.net.Uri;
+
+public class ContentUris {
+	public static Uri withAppendedId(Uri content_uri, long id) {
+		return Uri.withAppendedPath(content_uri, Long.toString(id));
+	}
+	
+	public static long parseId(Uri uri) {
+		String last = uri.getLastPathSegment();
+		return (last == null) ? -1 : Long.parseLong(last);
+	}
+}
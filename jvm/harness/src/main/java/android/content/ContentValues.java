@@ -0,0 +1,23 @@
+package android.content;
+
+import java.util.HashMap;
+
+public final class ContentValues {
+	private final HashMap<String, Object> values = new HashMap<String, Object>();
+	
+	public void put(String key, String value) {
+		values.put(key, value);
+	}
+	
+	public void put(String key, Long value) {
+		values.put(key, value);
+	}
+	
+	public Object get(String key) {
+		return values.get(key);
+	}
+	
+	public int size() {
+		return values.size();
+	}
+}
@@ -0,0 +1,29 @@
+package android.content;
+
+import java.io.File;
+
+import android.content.pm.PackageManager;
+import android.content.res.Resources;
+import android.net.Uri;
+
+public abstract class Context {
+	public static final int MODE_PRIVATE = 0;
+	
+	public abstract String getPackageName();
+	public abstract PackageManager getPackageManager();
+	public abstract Context getApplicationContext();
+	public abstract Resources getResources();
+	public abstract ContentResolver getContentResolver();
+	public abstract SharedPreferences getSharedPreferences(String name, int mode);
+	public abstract File getFilesDir();
+	public abstract File getCacheDir();
+	public abstract File getExternalFilesDir(String type);
+	public abstract File getDir(String name, int mode);
+	public abstract void sendBroadcast(Intent intent);
+	public abstract void grantUriPermission(String to_package, Uri uri, int mode_flags);
+	public abstract void revokeUriPermission(Uri uri, int mode_flags);
+	
+	public final String getString(int res_id) {
+		return getResources().getString(res_id);
+	}
+}
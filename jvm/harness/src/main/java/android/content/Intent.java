@@ -0,0 +1,183 @@
+package android.content;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+
+import android.net.Uri;
+import android.os.Bundle;
+import android.os.Parcelable;
+
+public class Intent {
+	public static final int FLAG_GRANT_READ_URI_PERMISSION = 0x00000001;
+	
+	private String action;
+	private Uri data;
+	private String package_name;
+	private String class_package;
+	private String class_name;
+	private int flags;
+	private Bundle extras;
+	
+	public Intent() { }
+	
+	public Intent(String action) {
+		this.action = action;
+	}
+	
+	public Intent(Intent o) {
+		action = o.action;
+		data = o.data;
+		package_name = o.package_name;
+		class_package = o.class_package;
+		class_name = o.class_name;
+		flags = o.flags;
+		if (o.extras != null) {
+			extras = new Bundle(o.extras);
+		}
+	}
+	
+	public String getAction() {
+		return action;
+	}
+	
+	public Uri getData() {
+		return data;
+	}
+	
+	public Intent setData(Uri data) {
+		this.data = data;
+		return this;
+	}
+	
+	public String getPackage() {
+		return package_name;
+	}
+	
+	public Intent setPackage(String package_name) {
+		this.package_name = package_name;
+		return this;
+	}
+	
+	public Intent setClassName(String package_name, String class_name) {
+		class_package = package_name;
+		this.class_name = class_name;
+		return this;
+	}
+	
+	public int getFlags() {
+		return flags;
+	}
+	
+	public Intent addFlags(int flags) {
+		this.flags |= flags;
+		return this;
+	}
+	
+	private Bundle extras() {
+		if (extras == null) {
+			extras = new Bundle();
+		}
+		return extras;
+	}
+	
+	public Intent putExtra(String name, boolean value) {
+		extras().putBoolean(name, value);
+		return this;
+	}
+	
+	public Intent putExtra(String name, int value) {
+		extras().putInt(name, value);
+		return this;
+	}
+	
+	public Intent putExtra(String name, long value) {
+		extras().putLong(name, value);
+		return this;
+	}
+	
+	public Intent putExtra(String name, String value) {
+		extras().putString(name, value);
+		return this;
+	}
+	
+	public Intent putExtra(String name, int[] value) {
+		extras().putIntArray(name, value);
+		return this;
+	}
+	
+	public Intent putExtra(String name, String[] value) {
+		extras().putStringArray(name, value);
+		return this;
+	}
+	
+	public Intent putExtra(String name, byte[] value) {
+		extras().putByteArray(name, value);
+		return this;
+	}
+	
+	public Intent putExtra(String name, Bundle value) {
+		extras().putBundle(name, value);
+		return this;
+	}
+	
+	public Intent putExtra(String name, Serializable value) {
+		extras().putSerializable(name, value);
+		return this;
+	}
+	
+	public Intent putStringArrayListExtra(String name, ArrayList<String> value) {
+		extras().putStringArrayList(name, value);
+		return this;
+	}
+	
+	public Intent putParcelableArrayListExtra(String name, ArrayList<? extends Parcelable> value) {
+		extras().putParcelableArrayList(name, value);
+		return this;
+	}
+	
+	public Intent putExtras(Bundle extras) {
+		extras().putAll(extras);
+		return this;
+	}
+	
+	public boolean hasExtra(String name) {
+		return (extras != null) && extras.containsKey(name);
+	}
+	
+	public Bundle getExtras() {
+		return (extras == null) ? null : new Bundle(extras);
+	}
+	
+	public boolean getBooleanExtra(String name, boolean default_value) {
+		return (extras == null) ? default_value : extras.getBoolean(name, default_value);
+	}
+	
+	public int getIntExtra(String name, int default_value) {
+		return (extras == null) ? default_value : extras.getInt(name, default_value);
+	}
+	
+	public long getLongExtra(String name, long default_value) {
+		return (extras == null) ? default_value : extras.getLong(name, default_value);
+	}
+	
+	public String getStringExtra(String name) {
+		return (extras == null) ? null : extras.getString(name);
+	}
+	
+	public int[] getIntArrayExtra(String name) {
+		return (extras == null) ? null : extras.getIntArray(name);
+	}
+	
+	public ArrayList<String> getStringArrayListExtra(String name) {
+		return (extras == null) ? null : extras.getStringArrayList(name);
+	}
+	
+	public <T extends Parcelable> ArrayList<T> getParcelableArrayListExtra(String name) {
+		return (extras == null) ? null : extras.<T>getParcelableArrayList(name);
+	}
+	
+	@Override
+	public String toString() {
+		return "Intent { act=" + action + ((class_name != null) ? " cmp=" + class_package + "/" + class_name : "") + " }";
+	}
+}
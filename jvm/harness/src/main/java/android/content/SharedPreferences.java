@@ -0,0 +1,18 @@
+package android.content;
+
+public interface SharedPreferences {
+	interface Editor {
+		Editor putString(String key, String value);
+		Editor putLong(String key, long value);
+		Editor putInt(String key, int value);
+		Editor remove(String key);
+		boolean commit();
+		void apply();
+	}
+	
+	String getString(String key, String def_value);
+	long getLong(String key, long def_value);
+	int getInt(String key, int def_value);
+	boolean contains(String key);
+	Editor edit();
+}
@@ -0,0 +1,15 @@
+package android.content.pm;
+
+public abstract class PackageManager {
+	public static class NameNotFoundException extends Exception {
+		private static final long serialVersionUID = 1L;
+		
+		public NameNotFoundException() { }
+		
+		public NameNotFoundException(String name) {
+			super(name);
+		}
+	}
+	
+	public abstract PackageInfo getPackageInfo(String package_name, int flags) throws NameNotFoundException;
+}
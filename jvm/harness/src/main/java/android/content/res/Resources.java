@@ -0,0 +1,36 @@
+package android.content.res;
+
+import java.util.Map;
+
+/**
+ * Values by resource ID, as given by whoever parsed the resource files
+ */
+public class Resources {
+	public static class NotFoundException extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+		
+		public NotFoundException(String name) {
+			super(name);
+		}
+	}
+	
+	private final Map<Integer, String> strings;
+	private final Map<Integer, String[]> string_arrays;
+	
+	public Resources(Map<Integer, String> strings, Map<Integer, String[]> string_arrays) {
+		this.strings = strings;
+		this.string_arrays = string_arrays;
+	}
+	
+	public String getString(int id) {
+		String s = strings.get(id);
+		if (s == null) throw new NotFoundException("String resource ID #0x" + Integer.toHexString(id));
+		return s;
+	}
+	
+	public String[] getStringArray(int id) {
+		String[] a = string_arrays.get(id);
+		if (a == null) throw new NotFoundException("String array resource ID #0x" + Integer.toHexString(id));
+		return a.clone();
+	}
+}
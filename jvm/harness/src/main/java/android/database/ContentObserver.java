@@ -0,0 +1,32 @@
+package android.database;
+
+import android.net.Uri;
+import android.os.Handler;
+
+public abstract class ContentObserver {
+	private final Handler handler;
+	
+	public ContentObserver(Handler handler) {
+		this.handler = handler;
+	}
+	
+	public void onChange(boolean self_change) { }
+	
+	public void onChange(boolean self_change, Uri uri) {
+		onChange(self_change);
+	}
+	
+	// on the observer's handler, if it has one
+	public final void dispatchChange(final boolean self_change, final Uri uri) {
+		if (handler == null) {
+			onChange(self_change, uri);
+			return;
+		}
+		handler.post(new Runnable() {
+			@Override
+			public void run() {
+				onChange(self_change, uri);
+			}
+		});
+	}
+}
@@ -0,0 +1,17 @@
+package android.database;
+
+import java.io.Closeable;
+
+public interface Cursor extends Closeable {
+	int getCount();
+	int getPosition();
+	boolean moveToFirst();
+	boolean moveToNext();
+	boolean isAfterLast();
+	int getColumnIndex(String column_name);
+	String getString(int column_index);
+	long getLong(int column_index);
+	int getInt(int column_index);
+	@Override
+	void close();
+}
@@ -0,0 +1,83 @@
+package android.database;
+
+import java.util.ArrayList;
+
+public class MatrixCursor implements Cursor {
+	private final String[] columns;
+	private final ArrayList<Object[]> rows = new ArrayList<Object[]>();
+	private int position = -1;
+	
+	public MatrixCursor(String[] column_names) {
+		columns = column_names;
+	}
+	
+	public void addRow(Object[] column_values) {
+		if (column_values.length != columns.length) {
+			throw new IllegalArgumentException("columnNames.length = " + columns.length + ", columnValues.length = " + column_values.length);
+		}
+		rows.add(column_values.clone());
+	}
+	
+	@Override
+	public int getCount() {
+		return rows.size();
+	}
+	
+	@Override
+	public int getPosition() {
+		return position;
+	}
+	
+	@Override
+	public boolean moveToFirst() {
+		position = 0;
+		return !rows.isEmpty();
+	}
+	
+	@Override
+	public boolean moveToNext() {
+		if (position < rows.size()) position++;
+		return position < rows.size();
+	}
+	
+	@Override
+	public boolean isAfterLast() {
+		return rows.isEmpty() || (position >= rows.size());
+	}
+	
+	@Override
+	public int getColumnIndex(String column_name) {
+		for (int i = 0; i < columns.length; i++) {
+			if (columns[i].equalsIgnoreCase(column_name)) return i;
+		}
+		return -1;
+	}
+	
+	private Object get(int column) {
+		if ( (position < 0) || (position >= rows.size()) ) throw new CursorIndexOutOfBoundsException(position, rows.size());
+		return rows.get(position)[column];
+	}
+	
+	@Override
+	public String getString(int column_index) {
+		Object o = get(column_index);
+		return (o == null) ? null : o.toString();
+	}
+	
+	@Override
+	public long getLong(int column_index) {
+		Object o = get(column_index);
+		if (o == null) return 0;
+		return (o instanceof Number) ? ((Number) o).longValue() : Long.parseLong(o.toString());
+	}
+	
+	@Override
+	public int getInt(int column_index) {
+		return (int) getLong(column_index);
+	}
+	
+	@Override
+	public void close() {
+		position = -1;
+	}
+}
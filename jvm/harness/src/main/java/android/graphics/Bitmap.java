@@ -0,0 +1,95 @@
+package android.graphics;
+
+import java.io.OutputStream;
+
+/**
+ * Pixels in memory, ARGB_8888. Nothing here produces one from image data (see BitmapFactory), so in the
+ * harness a Bitmap only exists if a test creates it
+ */
+public final class Bitmap {
+	public enum CompressFormat { JPEG, PNG, WEBP }
+	public enum Config { ALPHA_8, RGB_565, ARGB_4444, ARGB_8888 }
+	
+	private final int width, height;
+	private final int[] pixels;
+	private final boolean mutable;
+	private boolean recycled = false;
+	
+	private Bitmap(int width, int height, boolean mutable) {
+		this.width = width;
+		this.height = height;
+		this.pixels = new int[width * height];
+		this.mutable = mutable;
+	}
+	
+	public static Bitmap createBitmap(int width, int height, Config config) {
+		return new Bitmap(width, height, true);
+	}
+	
+	// nearest neighbour
+	public static Bitmap createScaledBitmap(Bitmap src, int dst_width, int dst_height, boolean filter) {
+		if ( (src.width == dst_width) && (src.height == dst_height) ) return src;
+		Bitmap dst = new Bitmap(dst_width, dst_height, true);
+		for (int y = 0; y < dst_height; y++) {
+			for (int x = 0; x < dst_width; x++) {
+				dst.pixels[y * dst_width + x] = src.pixels[(y * src.height / dst_height) * src.width + (x * src.width / dst_width)];
+			}
+		}
+		return dst;
+	}
+	
+	public int getWidth() {
+		return width;
+	}
+	
+	public int getHeight() {
+		return height;
+	}
+	
+	public Config getConfig() {
+		return Config.ARGB_8888;
+	}
+	
+	public boolean isMutable() {
+		return mutable;
+	}
+	
+	public int getRowBytes() {
+		return width * 4;
+	}
+	
+	public int getByteCount() {
+		return getRowBytes() * height;
+	}
+	
+	public int getAllocationByteCount() {
+		return getByteCount();
+	}
+	
+	public int getPixel(int x, int y) {
+		return pixels[y * width + x];
+	}
+	
+	public void setPixel(int x, int y, int color) {
+		pixels[y * width + x] = color;
+	}
+	
+	public void getPixels(int[] out, int offset, int stride, int x, int y, int w, int h) {
+		for (int row = 0; row < h; row++) {
+			System.arraycopy(pixels, (y + row) * width + x, out, offset + row * stride, w);
+		}
+	}
+	
+	// no codecs here
+	public boolean compress(CompressFormat format, int quality, OutputStream stream) {
+		return false;
+	}
+	
+	public void recycle() {
+		recycled = true;
+	}
+	
+	public boolean isRecycled() {
+		return recycled;
+	}
+}
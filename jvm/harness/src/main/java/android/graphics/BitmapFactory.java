@@ -0,0 +1,41 @@
+package android.graphics;
+
+import java.io.InputStream;
+
+/**
+ * No image codecs on the JVM: every decode fails, as for data which isn't an image
+ */
+public class BitmapFactory {
+	public static class Options {
+		public boolean inJustDecodeBounds;
+		public int inSampleSize;
+		public Bitmap.Config inPreferredConfig;
+		public Bitmap inBitmap;
+		public boolean inMutable;
+		public boolean inPurgeable;
+		public boolean inInputShareable;
+		public boolean inDither;
+		public int outWidth;
+		public int outHeight;
+	}
+	
+	public static Bitmap decodeStream(InputStream in) {
+		return null;
+	}
+	
+	public static Bitmap decodeStream(InputStream in, Rect out_padding, Options opts) {
+		if (opts != null) {
+			opts.outWidth = -1;
+			opts.outHeight = -1;
+		}
+		return null;
+	}
+	
+	public static Bitmap decodeByteArray(byte[] data, int offset, int length) {
+		return null;
+	}
+	
+	public static Bitmap decodeByteArray(byte[] data, int offset, int length, Options opts) {
+		return decodeStream(null, null, opts);
+	}
+}
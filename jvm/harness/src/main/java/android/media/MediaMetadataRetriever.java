@@ -0,0 +1,19 @@
+package android.media;
+
+import android.content.Context;
+import android.net.Uri;
+
+/**
+ * No audio file parsing here: no file has embedded art
+ */
+public class MediaMetadataRetriever {
+	public void setDataSource(String path) { }
+	
+	public void setDataSource(Context context, Uri uri) { }
+	
+	public byte[] getEmbeddedPicture() {
+		return null;
+	}
+	
+	public void release() { }
+}
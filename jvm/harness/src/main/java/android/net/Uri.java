@@ -0,0 +1,137 @@
+package android.net;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import android.os.Parcelable;
+
+/**
+ * Hierarchical URIs only (scheme://authority/path?query), kept as the string they were built from
+ */
+public abstract class Uri implements Parcelable, Comparable<Uri> {
+	public static final Uri EMPTY = parse("");
+	
+	private static final class StringUri extends Uri {
+		private final String s;
+		private final String scheme, authority, path;
+		
+		StringUri(String s) {
+			this.s = s;
+			int colon = s.indexOf(':');
+			int slash = s.indexOf('/');
+			boolean has_scheme = (colon > 0) && ( (slash < 0) || (colon < slash) );
+			scheme = has_scheme ? s.substring(0, colon) : null;
+			String rest = has_scheme ? s.substring(colon + 1) : s;
+			int query = rest.indexOf('?');
+			if (query >= 0) {
+				rest = rest.substring(0, query);
+			}
+			if (rest.startsWith("//")) {
+				int end = rest.indexOf('/', 2);
+				authority = rest.substring(2, (end < 0) ? rest.length() : end);
+				path = (end < 0) ? "" : rest.substring(end);
+			} else {
+				authority = null;
+				path = rest;
+			}
+		}
+		
+		@Override
+		public String getScheme() {
+			return scheme;
+		}
+		
+		@Override
+		public String getAuthority() {
+			return authority;
+		}
+		
+		@Override
+		public String getPath() {
+			return path;
+		}
+		
+		@Override
+		public String toString() {
+			return s;
+		}
+	}
+	
+	public static final class Builder {
+		private String scheme;
+		private String authority;
+		private final StringBuilder path = new StringBuilder();
+		
+		public Builder scheme(String scheme) {
+			this.scheme = scheme;
+			return this;
+		}
+		
+		public Builder authority(String authority) {
+			this.authority = authority;
+			return this;
+		}
+		
+		public Builder appendPath(String segment) {
+			path.append('/').append(segment);
+			return this;
+		}
+		
+		public Uri build() {
+			StringBuilder sb = new StringBuilder();
+			if (scheme != null) sb.append(scheme).append(':');
+			if (authority != null) sb.append("//").append(authority);
+			sb.append(path);
+			return new StringUri(sb.toString());
+		}
+	}
+	
+	Uri() { }
+	
+	public static Uri parse(String uri_string) {
+		return new StringUri(uri_string);
+	}
+	
+	public static Uri fromFile(File file) {
+		return new StringUri("file://" + file.getAbsolutePath());
+	}
+	
+	public static Uri withAppendedPath(Uri base_uri, String path_segment) {
+		String base = base_uri.toString();
+		return new StringUri(base.endsWith("/") ? base + path_segment : base + "/" + path_segment);
+	}
+	
+	public abstract String getScheme();
+	public abstract String getAuthority();
+	public abstract String getPath();
+	
+	public List<String> getPathSegments() {
+		ArrayList<String> segments = new ArrayList<String>();
+		for (String segment : getPath().split("/")) {
+			if (segment.length() > 0) segments.add(segment);
+		}
+		return Collections.unmodifiableList(segments);
+	}
+	
+	public String getLastPathSegment() {
+		List<String> segments = getPathSegments();
+		return segments.isEmpty() ? null : segments.get(segments.size() - 1);
+	}
+	
+	@Override
+	public boolean equals(Object o) {
+		return (o instanceof Uri) && toString().equals(o.toString());
+	}
+	
+	@Override
+	public int hashCode() {
+		return toString().hashCode();
+	}
+	
+	@Override
+	public int compareTo(Uri other) {
+		return toString().compareTo(other.toString());
+	}
+}
@@ -0,0 +1,17 @@
+package android.os;
+
+public class Build {
+	public static class VERSION {
+		// the app's target SDK unless -Dandroid.sdk=N. not a constant, so code paths for other versions stay compiled in
+		public static final int SDK_INT = Integer.getInteger("android.sdk", VERSION_CODES.JELLY_BEAN_MR1).intValue();
+	}
+	
+	public static class VERSION_CODES {
+		public static final int GINGERBREAD_MR1 = 10;
+		public static final int HONEYCOMB = 11;
+		public static final int HONEYCOMB_MR1 = 12;
+		public static final int JELLY_BEAN = 16;
+		public static final int JELLY_BEAN_MR1 = 17;
+		public static final int KITKAT = 19;
+	}
+}
@@ -0,0 +1,131 @@
+package android.os;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Set;
+
+/**
+ * Values are kept as given (never parcelled), so a reader sees the same objects the writer put
+ */
+public final class Bundle implements Parcelable {
+	private final HashMap<String, Object> map;
+	
+	public Bundle() {
+		map = new HashMap<String, Object>();
+	}
+	
+	public Bundle(Bundle b) {
+		map = new HashMap<String, Object>(b.map);
+	}
+	
+	public int size() {
+		return map.size();
+	}
+	
+	public boolean containsKey(String key) {
+		return map.containsKey(key);
+	}
+	
+	public Set<String> keySet() {
+		return map.keySet();
+	}
+	
+	public Object get(String key) {
+		return map.get(key);
+	}
+	
+	public void remove(String key) {
+		map.remove(key);
+	}
+	
+	public void putAll(Bundle b) {
+		map.putAll(b.map);
+	}
+	
+	public void putBoolean(String key, boolean value) {
+		map.put(key, value);
+	}
+	
+	public void putInt(String key, int value) {
+		map.put(key, value);
+	}
+	
+	public void putLong(String key, long value) {
+		map.put(key, value);
+	}
+	
+	public void putString(String key, String value) {
+		map.put(key, value);
+	}
+	
+	public void putIntArray(String key, int[] value) {
+		map.put(key, value);
+	}
+	
+	public void putStringArray(String key, String[] value) {
+		map.put(key, value);
+	}
+	
+	public void putByteArray(String key, byte[] value) {
+		map.put(key, value);
+	}
+	
+	public void putBundle(String key, Bundle value) {
+		map.put(key, value);
+	}
+	
+	public void putSerializable(String key, Serializable value) {
+		map.put(key, value);
+	}
+	
+	public void putStringArrayList(String key, ArrayList<String> value) {
+		map.put(key, value);
+	}
+	
+	public void putParcelableArrayList(String key, ArrayList<? extends Parcelable> value) {
+		map.put(key, value);
+	}
+	
+	public boolean getBoolean(String key, boolean default_value) {
+		Object o = map.get(key);
+		return (o instanceof Boolean) ? ((Boolean) o).booleanValue() : default_value;
+	}
+	
+	public int getInt(String key, int default_value) {
+		Object o = map.get(key);
+		return (o instanceof Integer) ? ((Integer) o).intValue() : default_value;
+	}
+	
+	public long getLong(String key, long default_value) {
+		Object o = map.get(key);
+		return (o instanceof Long) ? ((Long) o).longValue() : default_value;
+	}
+	
+	public int[] getIntArray(String key) {
+		Object o = map.get(key);
+		return (o instanceof int[]) ? (int[]) o : null;
+	}
+	
+	public String getString(String key) {
+		Object o = map.get(key);
+		return (o instanceof String) ? (String) o : null;
+	}
+	
+	@SuppressWarnings("unchecked")
+	public ArrayList<String> getStringArrayList(String key) {
+		Object o = map.get(key);
+		return (o instanceof ArrayList) ? (ArrayList<String>) o : null;
+	}
+	
+	@SuppressWarnings("unchecked")
+	public <T extends Parcelable> ArrayList<T> getParcelableArrayList(String key) {
+		Object o = map.get(key);
+		return (o instanceof ArrayList) ? (ArrayList<T>) o : null;
+	}
+	
+	@Override
+	public String toString() {
+		return "Bundle" + map;
+	}
+}
@@ -0,0 +1,34 @@
+package android.os;
+
+public class Handler {
+	private final Looper looper;
+	
+	public Handler() {
+		this(Looper.myLooper());
+	}
+	
+	public Handler(Looper looper) {
+		if (looper == null) throw new RuntimeException("Can't create handler inside thread that has not called Looper.prepare()");
+		this.looper = looper;
+	}
+	
+	public final Looper getLooper() {
+		return looper;
+	}
+	
+	public final boolean post(Runnable r) {
+		return looper.enqueue(this, r, SystemClock.uptimeMillis());
+	}
+	
+	public final boolean postDelayed(Runnable r, long delay_ms) {
+		return looper.enqueue(this, r, SystemClock.uptimeMillis() + Math.max(0, delay_ms));
+	}
+	
+	public final boolean postAtTime(Runnable r, long uptime_ms) {
+		return looper.enqueue(this, r, uptime_ms);
+	}
+	
+	public final void removeCallbacks(Runnable r) {
+		looper.remove(this, r);
+	}
+}
@@ -0,0 +1,44 @@
+package android.os;
+
+public class HandlerThread extends Thread {
+	private Looper looper;
+	
+	public HandlerThread(String name) {
+		this(name, Process.THREAD_PRIORITY_DEFAULT);
+	}
+	
+	public HandlerThread(String name, int priority) {
+		super(name);
+		setDaemon(true);
+	}
+	
+	@Override
+	public void run() {
+		Looper.prepare();
+		synchronized (this) {
+			looper = Looper.myLooper();
+			notifyAll();
+		}
+		Looper.loop();
+	}
+	
+	// waits for the thread to start
+	public Looper getLooper() {
+		if (!isAlive()) return null;
+		synchronized (this) {
+			while (isAlive() && (looper == null)) {
+				try {
+					wait();
+				} catch (InterruptedException e) { /* */ }
+			}
+		}
+		return looper;
+	}
+	
+	public boolean quit() {
+		Looper l = getLooper();
+		if (l == null) return false;
+		l.quit();
+		return true;
+	}
+}
@@ -0,0 +1,109 @@
+package android.os;
+
+import java.util.Iterator;
+import java.util.PriorityQueue;
+
+/**
+ * Runs posted callbacks in uptimeMillis order on the thread which called loop()
+ */
+public final class Looper {
+	private static final ThreadLocal<Looper> threads = new ThreadLocal<Looper>();
+	
+	static final class Message implements Comparable<Message> {
+		final Handler target;
+		final Runnable callback;
+		final long when;
+		final long seq;
+		
+		Message(Handler target, Runnable callback, long when, long seq) {
+			this.target = target;
+			this.callback = callback;
+			this.when = when;
+			this.seq = seq;
+		}
+		
+		@Override
+		public int compareTo(Message o) {
+			if (when != o.when) return (when < o.when) ? -1 : 1;
+			return (seq < o.seq) ? -1 : ((seq > o.seq) ? 1 : 0);
+		}
+	}
+	
+	private final PriorityQueue<Message> queue = new PriorityQueue<Message>();
+	private final Thread thread;
+	private long next_seq = 0;
+	private boolean quitting = false;
+	
+	private Looper() {
+		thread = Thread.currentThread();
+	}
+	
+	public static void prepare() {
+		if (threads.get() != null) throw new RuntimeException("Only one Looper may be created per thread");
+		threads.set(new Looper());
+	}
+	
+	public static Looper myLooper() {
+		return threads.get();
+	}
+	
+	public static void loop() {
+		Looper me = myLooper();
+		if (me == null) throw new RuntimeException("No Looper; Looper.prepare() wasn't called on this thread.");
+		while (true) {
+			Message msg = me.next();
+			if (msg == null) return;
+			msg.callback.run();
+		}
+	}
+	
+	public Thread getThread() {
+		return thread;
+	}
+	
+	public void quit() {
+		synchronized (queue) {
+			quitting = true;
+			queue.clear();
+			queue.notifyAll();
+		}
+	}
+	
+	// null once quit
+	private Message next() {
+		synchronized (queue) {
+			while (true) {
+				if (quitting) return null;
+				Message head = queue.peek();
+				long now = SystemClock.uptimeMillis();
+				if ( (head != null) && (head.when <= now) ) {
+					return queue.poll();
+				}
+				try {
+					queue.wait((head == null) ? 0 : head.when - now);
+				} catch (InterruptedException e) {
+					return null;
+				}
+			}
+		}
+	}
+	
+	boolean enqueue(Handler target, Runnable callback, long when) {
+		synchronized (queue) {
+			if (quitting) return false;
+			queue.add(new Message(target, callback, when, next_seq++));
+			queue.notifyAll();
+			return true;
+		}
+	}
+	
+	void remove(Handler target, Runnable callback) {
+		synchronized (queue) {
+			Iterator<Message> it = queue.iterator();
+			while (it.hasNext()) {
+				Message msg = it.next();
+				if ( (msg.target == target) && (msg.callback == callback) ) it.remove();
+			}
+		}
+	}
+}
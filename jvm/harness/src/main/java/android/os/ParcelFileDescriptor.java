@@ -0,0 +1,35 @@
+package android.os;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+
+/**
+ * A file opened for reading
+ */
+public class ParcelFileDescriptor implements Closeable {
+	public static final int MODE_READ_ONLY = 0x10000000;
+	
+	private final File file;
+	
+	private ParcelFileDescriptor(File file) {
+		this.file = file;
+	}
+	
+	public static ParcelFileDescriptor open(File file, int mode) throws FileNotFoundException {
+		if (mode != MODE_READ_ONLY) throw new IllegalArgumentException("read only here");
+		if (!file.isFile()) throw new FileNotFoundException(file.getPath());
+		return new ParcelFileDescriptor(file);
+	}
+	
+	@Override
+	public void close() throws IOException { }
+	
+	public static class AutoCloseInputStream extends FileInputStream {
+		public AutoCloseInputStream(ParcelFileDescriptor pfd) throws FileNotFoundException {
+			super(pfd.file);
+		}
+	}
+}
@@ -0,0 +1,24 @@
+package android.os;
+
+public final class SystemClock {
+	private static final long BOOT = System.nanoTime();
+	
+	private SystemClock() { }
+	
+	public static long uptimeMillis() {
+		return (System.nanoTime() - BOOT) / 1000000;
+	}
+	
+	// no deep sleep on a JVM
+	public static long elapsedRealtime() {
+		return uptimeMillis();
+	}
+	
+	public static void sleep(long ms) {
+		try {
+			Thread.sleep(ms);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
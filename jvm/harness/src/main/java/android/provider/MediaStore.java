@@ -0,0 +1,21 @@
+package android.provider;
+
+import android.net.Uri;
+
+public final class MediaStore {
+	public static final String AUTHORITY = "media";
+	
+	public static final class Audio {
+		public static final class Media {
+			public static final Uri EXTERNAL_CONTENT_URI = Uri.parse("content://" + AUTHORITY + "/external/audio/media");
+			public static final String _ID = "_id";
+			public static final String DATA = "_data";
+			public static final String DATE_MODIFIED = "date_modified";
+			public static final String TITLE = "title";
+			public static final String ARTIST = "artist";
+			public static final String ALBUM = "album";
+			public static final String ALBUM_ID = "album_id";
+			public static final String DURATION = "duration";
+		}
+	}
+}
@@ -0,0 +1,65 @@
+package android.util;
+
+/**
+ * Written to stderr, at INFO and above unless -Dandroid.log=VERBOSE|DEBUG|INFO|WARN|ERROR|NONE
+ */
+public final class Log {
+	public static final int VERBOSE = 2;
+	public static final int DEBUG = 3;
+	public static final int INFO = 4;
+	public static final int WARN = 5;
+	public static final int ERROR = 6;
+	private static final int NONE = 8;
+	private static final String[] NAMES = { "", "", "V", "D", "I", "W", "E" };
+	
+	private static final int level = parse_level(System.getProperty("android.log"));
+	
+	private Log() { }
+	
+	private static int parse_level(String name) {
+		if (name == null) return INFO;
+		for (int i = VERBOSE; i < NAMES.length; i++) {
+			if (name.regionMatches(true, 0, NAMES[i], 0, 1)) return i;
+		}
+		return NONE;
+	}
+	
+	public static boolean isLoggable(String tag, int priority) {
+		return priority >= level;
+	}
+	
+	private static int println(int priority, String tag, String msg) {
+		if (priority < level) return 0;
+		String line = NAMES[priority] + "/" + tag + ": " + msg;
+		System.err.println(line);
+		return line.length();
+	}
+	
+	public static int v(String tag, String msg) {
+		return println(VERBOSE, tag, msg);
+	}
+	
+	public static int d(String tag, String msg) {
+		return println(DEBUG, tag, msg);
+	}
+	
+	public static int i(String tag, String msg) {
+		return println(INFO, tag, msg);
+	}
+	
+	public static int w(String tag, String msg) {
+		return println(WARN, tag, msg);
+	}
+	
+	public static int w(String tag, String msg, Throwable tr) {
+		return println(WARN, tag, msg + ": " + tr);
+	}
+	
+	public static int e(String tag, String msg) {
+		return println(ERROR, tag, msg);
+	}
+	
+	public static int e(String tag, String msg, Throwable tr) {
+		return println(ERROR, tag, msg + ": " + tr);
+	}
+}
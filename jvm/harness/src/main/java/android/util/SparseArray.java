@@ -0,0 +1,87 @@
+package android.util;
+
+import java.util.Arrays;
+
+/**
+ * Keys kept sorted, values found by binary search
+ */
+public class SparseArray<E> {
+	private int[] keys;
+	private Object[] values;
+	private int size = 0;
+	
+	public SparseArray() {
+		this(10);
+	}
+	
+	public SparseArray(int initial_capacity) {
+		keys = new int[Math.max(1, initial_capacity)];
+		values = new Object[keys.length];
+	}
+	
+	public E get(int key) {
+		return get(key, null);
+	}
+	
+	@SuppressWarnings("unchecked")
+	public E get(int key, E value_if_not_found) {
+		int i = Arrays.binarySearch(keys, 0, size, key);
+		return (i < 0) ? value_if_not_found : (E) values[i];
+	}
+	
+	public void put(int key, E value) {
+		int i = Arrays.binarySearch(keys, 0, size, key);
+		if (i >= 0) {
+			values[i] = value;
+			return;
+		}
+		i = ~i;
+		if (size == keys.length) {
+			keys = Arrays.copyOf(keys, size * 2);
+			values = Arrays.copyOf(values, size * 2);
+		}
+		System.arraycopy(keys, i, keys, i + 1, size - i);
+		System.arraycopy(values, i, values, i + 1, size - i);
+		keys[i] = key;
+		values[i] = value;
+		size++;
+	}
+	
+	public void remove(int key) {
+		int i = Arrays.binarySearch(keys, 0, size, key);
+		if (i >= 0) removeAt(i);
+	}
+	
+	public void delete(int key) {
+		remove(key);
+	}
+	
+	public void removeAt(int index) {
+		System.arraycopy(keys, index + 1, keys, index, size - index - 1);
+		System.arraycopy(values, index + 1, values, index, size - index - 1);
+		size--;
+		values[size] = null;
+	}
+	
+	public int size() {
+		return size;
+	}
+	
+	public int keyAt(int index) {
+		return keys[index];
+	}
+	
+	@SuppressWarnings("unchecked")
+	public E valueAt(int index) {
+		return (E) values[index];
+	}
+	
+	public int indexOfKey(int key) {
+		return Arrays.binarySearch(keys, 0, size, key);
+	}
+	
+	public void clear() {
+		Arrays.fill(values, 0, size, null);
+		size = 0;
+	}
+}
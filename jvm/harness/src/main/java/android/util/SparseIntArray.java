@@ -0,0 +1,76 @@
+package android.util;
+
+import java.util.Arrays;
+
+/**
+ * Keys kept sorted, values found by binary search
+ */
+public class SparseIntArray {
+	private int[] keys;
+	private int[] values;
+	private int size = 0;
+	
+	public SparseIntArray() {
+		this(10);
+	}
+	
+	public SparseIntArray(int initial_capacity) {
+		keys = new int[Math.max(1, initial_capacity)];
+		values = new int[keys.length];
+	}
+	
+	public int get(int key) {
+		return get(key, 0);
+	}
+	
+	public int get(int key, int value_if_not_found) {
+		int i = Arrays.binarySearch(keys, 0, size, key);
+		return (i < 0) ? value_if_not_found : values[i];
+	}
+	
+	public void put(int key, int value) {
+		int i = Arrays.binarySearch(keys, 0, size, key);
+		if (i >= 0) {
+			values[i] = value;
+			return;
+		}
+		i = ~i;
+		if (size == keys.length) {
+			keys = Arrays.copyOf(keys, size * 2);
+			values = Arrays.copyOf(values, size * 2);
+		}
+		System.arraycopy(keys, i, keys, i + 1, size - i);
+		System.arraycopy(values, i, values, i + 1, size - i);
+		keys[i] = key;
+		values[i] = value;
+		size++;
+	}
+	
+	public void delete(int key) {
+		int i = Arrays.binarySearch(keys, 0, size, key);
+		if (i < 0) return;
+		System.arraycopy(keys, i + 1, keys, i, size - i - 1);
+		System.arraycopy(values, i + 1, values, i, size - i - 1);
+		size--;
+	}
+	
+	public int size() {
+		return size;
+	}
+	
+	public int keyAt(int index) {
+		return keys[index];
+	}
+	
+	public int valueAt(int index) {
+		return values[index];
+	}
+	
+	public int indexOfKey(int key) {
+		return Arrays.binarySearch(keys, 0, size, key);
+	}
+	
+	public void clear() {
+		size = 0;
+	}
+}
@@ -0,0 +1,6 @@
+package com.pennas.canvasnowplayingplugin;
+
+// stand-in for the class ADT generates. release, so the harness measures without debug logging
+public final class BuildConfig {
+	public static final boolean DEBUG = false;
+}
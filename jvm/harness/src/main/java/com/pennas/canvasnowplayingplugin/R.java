@@ -0,0 +1,18 @@
+package com.pennas.canvasnowplayingplugin;
+
+// stand-in for the class aapt generates, for the resources in ../../res
+public final class R {
+	public static final class array {
+		public static final int format_mask_descs = 0x7f040000;
+	}
+	public static final class drawable {
+		public static final int canvas_icon = 0x7f020000;
+	}
+	public static final class string {
+		public static final int app_name = 0x7f050000;
+		public static final int params_desc_album_art = 0x7f050001;
+		public static final int params_desc_now_playing = 0x7f050002;
+		public static final int plugin_name_album_art = 0x7f050003;
+		public static final int plugin_name_now_playing = 0x7f050004;
+	}
+}
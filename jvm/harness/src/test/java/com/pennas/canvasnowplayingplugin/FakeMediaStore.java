@@ -0,0 +1,81 @@
+package com.pennas.canvasnowplayingplugin;
+
+import java.io.FileNotFoundException;
+
+import android.content.ContentProvider;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+import android.provider.MediaStore;
+
+/**
+ * MediaStore stand-in: an audio table of TRACKS rows, ten per album, and no album art (so every album goes
+ * through the embedded art path once). Track i is TITLE_PREFIX + i by ARTIST, with _ID i + 1
+ */
+public class FakeMediaStore extends ContentProvider {
+	static final int TRACKS = 2000;
+	static final String ARTIST = "Load Artist";
+	static final String TITLE_PREFIX = "Load #";
+	
+	private int queries = 0;
+	
+	@Override
+	public boolean onCreate() {
+		return true;
+	}
+	
+	@Override
+	public synchronized Cursor query(Uri uri, String[] projection, String selection, String[] selection_args, String sort_order) {
+		queries++;
+		MatrixCursor cursor = new MatrixCursor(projection);
+		// full scans only: the library doesn't change during a run, so refreshes and lookups find nothing new
+		if ( !MediaStore.Audio.Media.EXTERNAL_CONTENT_URI.equals(uri) || (selection != null) ) return cursor;
+		Object[] row = new Object[projection.length];
+		for (int i = 0; i < TRACKS; i++) {
+			for (int col = 0; col < projection.length; col++) {
+				row[col] = column(projection[col], i);
+			}
+			cursor.addRow(row);
+		}
+		return cursor;
+	}
+	
+	private static Object column(String name, int i) {
+		if (MediaStore.Audio.Media._ID.equals(name)) return Long.valueOf(i + 1);
+		if (MediaStore.Audio.Media.ALBUM_ID.equals(name)) return Long.valueOf(i / 10 + 1);
+		if (MediaStore.Audio.Media.ARTIST.equals(name)) return ARTIST;
+		if (MediaStore.Audio.Media.TITLE.equals(name)) return TITLE_PREFIX + i;
+		return Long.valueOf(0);
+	}
+	
+	@Override
+	public ParcelFileDescriptor openFile(Uri uri, String mode) throws FileNotFoundException {
+		throw new FileNotFoundException(uri.toString());
+	}
+	
+	synchronized int get_queries() {
+		return queries;
+	}
+	
+	@Override
+	public String getType(Uri uri) {
+		return null;
+	}
+	
+	@Override
+	public Uri insert(Uri uri, ContentValues values) {
+		return null;
+	}
+	
+	@Override
+	public int delete(Uri uri, String selection, String[] selection_args) {
+		return 0;
+	}
+	
+	@Override
+	public int update(Uri uri, ContentValues values, String selection, String[] selection_args) {
+		return 0;
+	}
+}
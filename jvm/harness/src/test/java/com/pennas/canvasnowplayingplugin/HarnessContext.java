@@ -0,0 +1,186 @@
+package com.pennas.canvasnowplayingplugin;
+
+import java.io.File;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import android.content.ContentProvider;
+import android.content.ContentResolver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.SharedPreferences;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.content.pm.ProviderInfo;
+import android.content.res.Resources;
+import android.net.Uri;
+
+/**
+ * The app's Context for the harness: files under a temporary dir, preferences in memory, content providers
+ * registered by the test, and strings from ../../res/values. Broadcasts go nowhere (the test sees them through
+ * PebbleCanvasPlugin's BroadcastObserver)
+ */
+final class HarnessContext extends Context {
+	private static final String PACKAGE_NAME = "com.pennas.canvasnowplayingplugin";
+	private static final String VERSION_NAME = "1.2";
+	// relative to the harness module
+	private static final String STRINGS_XML = "../../res/values/strings.xml";
+	
+	private final File root;
+	private final Resources resources;
+	private final HashMap<String, InMemoryPreferences> prefs = new HashMap<String, InMemoryPreferences>();
+	private final HashMap<String, ContentProvider> providers = new HashMap<String, ContentProvider>();
+	private final ContentResolver resolver = new ContentResolver() {
+		@Override
+		protected ContentProvider acquireProvider(String authority) {
+			synchronized (providers) {
+				return providers.get(authority);
+			}
+		}
+	};
+	private final PackageManager package_manager = new PackageManager() {
+		@Override
+		public PackageInfo getPackageInfo(String package_name, int flags) throws NameNotFoundException {
+			if (!PACKAGE_NAME.equals(package_name)) throw new NameNotFoundException(package_name);
+			PackageInfo info = new PackageInfo();
+			info.packageName = package_name;
+			info.versionName = VERSION_NAME;
+			return info;
+		}
+	};
+	private int broadcasts = 0;
+	
+	HarnessContext(File root) throws Exception {
+		this.root = root;
+		resources = load_resources(new File(System.getProperty("basedir", "."), STRINGS_XML));
+	}
+	
+	// values by the IDs in the R stand-in, matched up by name
+	private static Resources load_resources(File strings_xml) throws Exception {
+		Document doc = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(strings_xml);
+		HashMap<Integer, String> strings = new HashMap<Integer, String>();
+		NodeList nodes = doc.getElementsByTagName("string");
+		for (int i = 0; i < nodes.getLength(); i++) {
+			Element e = (Element) nodes.item(i);
+			Integer id = id_of(R.string.class, e.getAttribute("name"));
+			if (id != null) strings.put(id, e.getTextContent());
+		}
+		HashMap<Integer, String[]> arrays = new HashMap<Integer, String[]>();
+		nodes = doc.getElementsByTagName("string-array");
+		for (int i = 0; i < nodes.getLength(); i++) {
+			Element e = (Element) nodes.item(i);
+			Integer id = id_of(R.array.class, e.getAttribute("name"));
+			if (id == null) continue;
+			NodeList items = e.getElementsByTagName("item");
+			ArrayList<String> values = new ArrayList<String>();
+			for (int j = 0; j < items.getLength(); j++) {
+				values.add(items.item(j).getTextContent());
+			}
+			arrays.put(id, values.toArray(new String[values.size()]));
+		}
+		return new Resources(strings, arrays);
+	}
+	
+	private static Integer id_of(Class<?> type, String name) throws IllegalAccessException {
+		try {
+			Field f = type.getField(name);
+			return f.getInt(null);
+		} catch (NoSuchFieldException e) {
+			return null;
+		}
+	}
+	
+	void add_provider(String authority, ContentProvider provider) {
+		ProviderInfo info = new ProviderInfo();
+		info.authority = authority;
+		provider.attachInfo(this, info);
+		synchronized (providers) {
+			providers.put(authority, provider);
+		}
+	}
+	
+	synchronized int get_broadcasts() {
+		return broadcasts;
+	}
+	
+	private File dir(String name) {
+		File dir = new File(root, name);
+		dir.mkdirs();
+		return dir;
+	}
+	
+	@Override
+	public String getPackageName() {
+		return PACKAGE_NAME;
+	}
+	
+	@Override
+	public PackageManager getPackageManager() {
+		return package_manager;
+	}
+	
+	@Override
+	public Context getApplicationContext() {
+		return this;
+	}
+	
+	@Override
+	public Resources getResources() {
+		return resources;
+	}
+	
+	@Override
+	public ContentResolver getContentResolver() {
+		return resolver;
+	}
+	
+	@Override
+	public SharedPreferences getSharedPreferences(String name, int mode) {
+		synchronized (prefs) {
+			InMemoryPreferences p = prefs.get(name);
+			if (p == null) {
+				p = new InMemoryPreferences();
+				prefs.put(name, p);
+			}
+			return p;
+		}
+	}
+	
+	@Override
+	public File getFilesDir() {
+		return dir("files");
+	}
+	
+	@Override
+	public File getCacheDir() {
+		return dir("cache");
+	}
+	
+	@Override
+	public File getExternalFilesDir(String type) {
+		return dir("external");
+	}
+	
+	@Override
+	public File getDir(String name, int mode) {
+		return dir("app_" + name);
+	}
+	
+	@Override
+	public synchronized void sendBroadcast(Intent intent) {
+		broadcasts++;
+	}
+	
+	@Override
+	public void grantUriPermission(String to_package, Uri uri, int mode_flags) { }
+	
+	@Override
+	public void revokeUriPermission(Uri uri, int mode_flags) { }
+}
@@ -0,0 +1,105 @@
+package com.pennas.canvasnowplayingplugin;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import android.content.SharedPreferences;
+
+/**
+ * SharedPreferences without the file: edits are applied atomically to a map
+ */
+final class InMemoryPreferences implements SharedPreferences {
+	private final HashMap<String, Object> values = new HashMap<String, Object>();
+	private int commits = 0;
+	
+	private final class InMemoryEditor implements Editor {
+		// null value: remove
+		private final HashMap<String, Object> changes = new HashMap<String, Object>();
+		
+		@Override
+		public Editor putString(String key, String value) {
+			changes.put(key, value);
+			return this;
+		}
+		
+		@Override
+		public Editor putLong(String key, long value) {
+			changes.put(key, value);
+			return this;
+		}
+		
+		@Override
+		public Editor putInt(String key, int value) {
+			changes.put(key, value);
+			return this;
+		}
+		
+		@Override
+		public Editor remove(String key) {
+			changes.put(key, null);
+			return this;
+		}
+		
+		@Override
+		public boolean commit() {
+			synchronized (values) {
+				for (Map.Entry<String, Object> e : changes.entrySet()) {
+					if (e.getValue() == null) {
+						values.remove(e.getKey());
+					} else {
+						values.put(e.getKey(), e.getValue());
+					}
+				}
+				commits++;
+			}
+			return true;
+		}
+		
+		@Override
+		public void apply() {
+			commit();
+		}
+	}
+	
+	@Override
+	public String getString(String key, String def_value) {
+		synchronized (values) {
+			Object o = values.get(key);
+			return (o instanceof String) ? (String) o : def_value;
+		}
+	}
+	
+	@Override
+	public long getLong(String key, long def_value) {
+		synchronized (values) {
+			Object o = values.get(key);
+			return (o instanceof Long) ? ((Long) o).longValue() : def_value;
+		}
+	}
+	
+	@Override
+	public int getInt(String key, int def_value) {
+		synchronized (values) {
+			Object o = values.get(key);
+			return (o instanceof Integer) ? ((Integer) o).intValue() : def_value;
+		}
+	}
+	
+	@Override
+	public boolean contains(String key) {
+		synchronized (values) {
+			return values.containsKey(key);
+		}
+	}
+	
+	@Override
+	public Editor edit() {
+		return new InMemoryEditor();
+	}
+	
+	int get_commits() {
+		synchronized (values) {
+			return commits;
+		}
+	}
+}
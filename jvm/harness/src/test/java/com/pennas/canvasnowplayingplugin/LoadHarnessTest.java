@@ -0,0 +1,282 @@
+package com.pennas.canvasnowplayingplugin;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.ClassRule;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runners.MethodSorters;
+
+import android.content.Intent;
+import android.os.SystemClock;
+import android.provider.MediaStore;
+
+import com.pennas.pebblecanvas.plugin.BroadcastObserver;
+import com.pennas.pebblecanvas.plugin.PebbleCanvasPlugin;
+import com.pennas.pebblecanvas.plugin.PluginStats;
+
+/**
+ * Replays scripts of player broadcasts through the real receivers (NowPlayingReceiver: offer, then a settle check
+ * on the timer thread; NowPlayingPlugin: dispatch), while playing the part of Canvas: requesting values whenever
+ * notified, plus definitions every few events.
+ * 
+ * By default the broadcasts are sent back to back, so each script is one burst, and only results which don't depend
+ * on timing are checked: the last track reaches Canvas, the burst is applied once per player, MediaStore is scanned
+ * once per process and the state file is written at most once per burst.
+ * With -Dharness.load=true (mvn -B test -Pload) they are spaced out as a skipping user would send them, and it also
+ * fails if end-to-end latency (player broadcast to the UPDATE reply carrying that track), request handling time or
+ * allocation per event go over the thresholds.
+ * 
+ * Runs on the android.* stand-ins, with HarnessContext (FakeMediaStore, in-memory preferences). The app's
+ * state is static, as in its process on a device, so the scripts run one after another in the same "process",
+ * cold start first
+ */
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class LoadHarnessTest implements BroadcastObserver {
+	private static final boolean LOAD = Boolean.getBoolean("harness.load");
+	private static final String[] PLAYERS = { "com.android.music", "com.sec.android.app.music" };
+	private static final int EVENTS = 100;
+	private static final int INTERVAL_MS = 50;
+	private static final int DEFS_EVERY = 25;
+	private static final int ID_NOW_PLAYING = 1;
+	// time allowed for the last reply (or state write) after the last event: longest settle, plus the notify interval
+	private static final long DRAIN_MS = 3000;
+	
+	// load thresholds. latency includes the deliberate waits: settling a burst (up to 1s while skipping) and
+	// limiting notifies to one per 500ms. the rest is what processing may add
+	private static final long MAX_SETTLE_MS = 1000;
+	private static final long NOTIFY_INTERVAL_MS = 500;
+	private static final long PROCESSING_MS = 200;
+	private static final long MAX_LATENCY_P90_MS = NOTIFY_INTERVAL_MS + PROCESSING_MS;
+	private static final long MAX_LATENCY_MS = MAX_SETTLE_MS + NOTIFY_INTERVAL_MS + PROCESSING_MS;
+	// one request, from leaving the queue to its reply being sent. p90, as a run has only ~10 requests and the
+	// cold start's first one (class loading, no JIT yet) varies from 5 to 30ms
+	private static final long MAX_RECEIVE_P90_US = 10000;
+	// by all threads, per player broadcast (also covers the requests and definitions it causes)
+	private static final long MAX_ALLOC_BYTES_PER_EVENT = 64 * 1024;
+	
+	// titles are never repeated between runs, so replies can't be matched to an earlier run's events
+	private static int next_track = 0;
+	
+	@ClassRule
+	public static final TemporaryFolder folder = new TemporaryFolder();
+	private static HarnessContext context;
+	private static FakeMediaStore media_store;
+	
+	private final NowPlayingPlugin plugin = new NowPlayingPlugin();
+	private final NowPlayingReceiver receiver = new NowPlayingReceiver();
+	
+	// title -> uptime the player broadcast for it was sent
+	private final HashMap<String, Long> sent_at = new HashMap<String, Long>();
+	private final long[] latencies = new long[EVENTS];
+	private int delivered = 0;
+	private int notifies = 0;
+	private int updates = 0;
+	private int definitions = 0;
+	
+	@BeforeClass
+	public static void set_up_process() throws Exception {
+		context = new HarnessContext(folder.getRoot());
+		media_store = new FakeMediaStore();
+		context.add_provider(MediaStore.AUTHORITY, media_store);
+	}
+	
+	@Before
+	public void set_up() {
+		PebbleCanvasPlugin.set_broadcast_observer(this);
+		PluginStats.reset();
+	}
+	
+	@After
+	public void tear_down() {
+		PebbleCanvasPlugin.set_broadcast_observer(null);
+	}
+	
+	// track skips on one player
+	@Test
+	public void skips() {
+		run("skips", false, false);
+	}
+	
+	// alternating between two players
+	@Test
+	public void switch_players() {
+		run("switch", true, false);
+	}
+	
+	// definitions dropped first, as after a restart
+	@Test
+	public void cold() {
+		run("cold", false, true);
+	}
+	
+	private void run(String script, boolean switch_players, boolean cold) {
+		int applied = NowPlayingReceiver.get_events_applied();
+		int writes = TrackStateStore.get_writes();
+		long allocated = allocated_bytes();
+		long start = SystemClock.uptimeMillis();
+		if (cold) {
+			PebbleCanvasPlugin.invalidate_definitions();
+			plugin.onReceive(context, new Intent(PebbleCanvasPlugin.CANVAS_ACTION_REQUEST_DEFINITIONS));
+		}
+		String last_title = null;
+		for (int i = 0; i < EVENTS; i++) {
+			String player = switch_players ? PLAYERS[i % PLAYERS.length] : PLAYERS[0];
+			int track = next_track++ % FakeMediaStore.TRACKS;
+			last_title = FakeMediaStore.TITLE_PREFIX + track;
+			Intent event = new Intent(player + ".metachanged");
+			event.putExtra("artist", FakeMediaStore.ARTIST);
+			event.putExtra("track", last_title);
+			event.putExtra("id", (long) (track + 1));
+			event.putExtra("playing", true);
+			synchronized (this) {
+				sent_at.put(last_title, SystemClock.uptimeMillis());
+			}
+			receiver.onReceive(context, event);
+			
+			if (i % DEFS_EVERY == 0) {
+				plugin.onReceive(context, new Intent(PebbleCanvasPlugin.CANVAS_ACTION_REQUEST_DEFINITIONS));
+			}
+			if (LOAD) sleep(INTERVAL_MS);
+		}
+		long elapsed = SystemClock.uptimeMillis() - start;
+		boolean last_delivered = drain(last_title);
+		allocated = allocated_bytes() - allocated;
+		applied = NowPlayingReceiver.get_events_applied() - applied;
+		writes = drain_writes(writes) - writes;
+		
+		long[] sorted;
+		synchronized (this) {
+			sorted = Arrays.copyOf(latencies, delivered);
+		}
+		Arrays.sort(sorted);
+		long receive_p90 = PluginStats.percentile(PluginStats.STAGE_RECEIVE, 90);
+		long alloc_per_event = allocated / EVENTS;
+		report(script, elapsed, sorted, applied, writes, receive_p90, alloc_per_event);
+		
+		// the final state must always reach canvas, however many before it were coalesced
+		assertTrue(script + ": last track not delivered", last_delivered);
+		assertTrue(script + ": " + delivered + " delivered from " + applied + " applied", delivered <= applied);
+		assertTrue(script + ": " + writes + " state writes from " + applied + " applied", writes <= applied);
+		// the index answers every lookup after the first scan
+		assertEquals(script + ": mediastore queries", 1, media_store.get_queries());
+		if (!LOAD) {
+			// one burst: each player's tracks merged into one
+			assertEquals(script + ": applied", switch_players ? PLAYERS.length : 1, applied);
+			return;
+		}
+		assertTrue(script + ": p90 latency " + percentile(sorted, 90) + "ms", percentile(sorted, 90) <= MAX_LATENCY_P90_MS);
+		assertTrue(script + ": max latency " + percentile(sorted, 100) + "ms", percentile(sorted, 100) <= MAX_LATENCY_MS);
+		assertTrue(script + ": receive p90 " + receive_p90 + "us", receive_p90 <= MAX_RECEIVE_P90_US);
+		assertTrue(script + ": " + alloc_per_event + " bytes allocated per event", alloc_per_event <= MAX_ALLOC_BYTES_PER_EVENT);
+	}
+	
+	// wait for the reply carrying the last track
+	private boolean drain(String last_title) {
+		long give_up = SystemClock.uptimeMillis() + DRAIN_MS;
+		while (SystemClock.uptimeMillis() < give_up) {
+			synchronized (this) {
+				if (!sent_at.containsKey(last_title)) return true;
+			}
+			sleep(10);
+		}
+		return false;
+	}
+	
+	// wait for the batched state write after the last change
+	private static int drain_writes(int before) {
+		long give_up = SystemClock.uptimeMillis() + DRAIN_MS;
+		while ( (TrackStateStore.get_writes() == before) && (SystemClock.uptimeMillis() < give_up) ) {
+			sleep(10);
+		}
+		return TrackStateStore.get_writes();
+	}
+	
+	// plays canvas: ask for values when notified, and match replies to the events which caused them
+	@Override
+	public void on_broadcast(Intent intent) {
+		String action = intent.getAction();
+		if (PebbleCanvasPlugin.CANVAS_ACTION_NOTIFY_UPDATE.equals(action)) {
+			if (intent.getIntExtra(PebbleCanvasPlugin.CANVAS_DEFINITION_ID, PebbleCanvasPlugin.NO_VALUE) != ID_NOW_PLAYING) return;
+			synchronized (this) {
+				notifies++;
+			}
+			Intent request = new Intent(PebbleCanvasPlugin.CANVAS_ACTION_REQUEST_UPDATE);
+			request.putExtra(PebbleCanvasPlugin.CANVAS_DEFINITION_PACKAGE, context.getPackageName());
+			request.putExtra(PebbleCanvasPlugin.CANVAS_DEFINITION_ID, ID_NOW_PLAYING);
+			ArrayList<String> masks = new ArrayList<String>();
+			masks.add("%A");
+			masks.add("%T");
+			request.putStringArrayListExtra(PebbleCanvasPlugin.CANVAS_VALUE_FORMAT_MASKS, masks);
+			plugin.onReceive(context, request);
+		} else if (PebbleCanvasPlugin.CANVAS_ACTION_UPDATE.equals(action)) {
+			ArrayList<String> values = intent.getStringArrayListExtra(PebbleCanvasPlugin.CANVAS_VALUE_FORMAT_MASK_VALUES);
+			long now = SystemClock.uptimeMillis();
+			synchronized (this) {
+				updates++;
+				if ( (values == null) || (values.size() < 2) ) return;
+				Long sent = sent_at.remove(values.get(1));
+				if (sent != null) {
+					latencies[delivered++] = now - sent;
+				}
+			}
+		} else if (PebbleCanvasPlugin.CANVAS_ACTION_DEFINITION.equals(action)) {
+			synchronized (this) {
+				definitions++;
+			}
+		}
+	}
+	
+	private synchronized void report(String script, long elapsed_ms, long[] sorted, int applied, int writes,
+			long receive_p90, long alloc_per_event) {
+		StringBuilder sb = new StringBuilder();
+		sb.append("load harness: ").append(script).append(" events = ").append(EVENTS)
+		  .append(" interval = ").append(LOAD ? INTERVAL_MS : 0).append("ms defs_every = ").append(DEFS_EVERY).append('\n');
+		sb.append("elapsed = ").append(elapsed_ms).append("ms\n");
+		// events not delivered were coalesced into a later one, as intended
+		sb.append("delivered = ").append(delivered).append(" coalesced = ").append(EVENTS - delivered)
+		  .append(" notifies = ").append(notifies).append(" updates = ").append(updates)
+		  .append(" definitions = ").append(definitions).append(" applied = ").append(applied)
+		  .append(" state writes = ").append(writes).append('\n');
+		sb.append("latency ms p50 = ").append(percentile(sorted, 50)).append(" p90 = ").append(percentile(sorted, 90))
+		  .append(" p99 = ").append(percentile(sorted, 99)).append(" max = ").append(percentile(sorted, 100)).append('\n');
+		sb.append("receive p90 = ").append(receive_p90).append("us allocated per event = ").append(alloc_per_event)
+		  .append(" bytes mediastore queries = ").append(media_store.get_queries()).append('\n');
+		sb.append(PluginStats.dump());
+		sb.append(TrackStateStore.get_stats()).append('\n');
+		sb.append(ArtCache.get_stats()).append('\n');
+		System.out.print(sb);
+	}
+	
+	// by every thread, including the work pool and timer threads
+	private static long allocated_bytes() {
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long total = 0;
+		for (long bytes : threads.getThreadAllocatedBytes(threads.getAllThreadIds())) {
+			if (bytes > 0) total += bytes;
+		}
+		return total;
+	}
+	
+	private static long percentile(long[] sorted, int pct) {
+		if (sorted.length == 0) return 0;
+		int i = Math.min(sorted.length - 1, sorted.length * pct / 100);
+		return sorted[i];
+	}
+	
+	private static void sleep(long ms) {
+		try {
+			Thread.sleep(ms);
+		} catch (InterruptedException e) { /* */ }
+	}
+}
@@ -0,0 +1,180 @@
+package com.pennas.canvasnowplayingplugin;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.media.MediaMetadataRetriever;
+import android.net.Uri;
+import android.os.Build;
+import android.util.Log;
+
+import com.pennas.canvasnowplayingplugin.NowPlayingPlugin.Snapshot;
+import com.pennas.pebblecanvas.plugin.BitmapDecoder;
+import com.pennas.pebblecanvas.plugin.PebbleCanvasPlugin;
+import com.pennas.pebblecanvas.plugin.core.CacheFiles;
+
+/**
+ * Album art taken from the audio file's own tags, for tracks MediaStore has no art for.
+ * 
+ * Extracting it means parsing the audio file, so the result is downscaled to watch size, compressed and kept
+ * in a size-bounded cache dir keyed by album. Later plays (also after a restart) are one small file read.
+ * Albums without embedded art get an empty marker file, so they aren't parsed again on every play
+ */
+final class ArtCache {
+	private static final String DIR_NAME = "album_art";
+	private static final String FILENAME_PREFIX = "art_";
+	private static final String TMP_SUFFIX = ".tmp";
+	private static final String NONE_SUFFIX = ".none";
+	// retry eventually: the file may have been re-tagged
+	private static final long NONE_TTL = 24 * 60 * 60 * 1000;
+	private static final int MAX_BYTES = 2 * 1024 * 1024;
+	// markers are empty, so bound the count as well as the size
+	private static final int MAX_FILES = 500;
+	private static final int JPEG_QUALITY = 90;
+	// decode/compress at up to twice watch size: canvas may crop or scale it
+	private static final int TARGET_WIDTH = PebbleCanvasPlugin.PEBBLE_SCREEN_WIDTH * 2;
+	private static final int TARGET_HEIGHT = PebbleCanvasPlugin.PEBBLE_SCREEN_HEIGHT * 2;
+	
+	private static int hits = 0;
+	private static int extracted = 0;
+	private static int missing = 0;
+	private static int known_missing = 0;
+	
+	private ArtCache() { }
+	
+	/**
+	 * @return file:// URI of the track's embedded art (extracted now, if not already cached), or null if it has none
+	 */
+	static synchronized Uri get_embedded_art(Context context, Snapshot track) {
+		// MediaMetadataRetriever.getEmbeddedPicture is API 10
+		if (Build.VERSION.SDK_INT < Build.VERSION_CODES.GINGERBREAD_MR1) return null;
+		String key = key_of(track);
+		if (key == null) return null;
+		
+		File dir = get_dir(context);
+		File f = new File(dir, FILENAME_PREFIX + key);
+		if (f.exists()) {
+			hits++;
+			// LRU by last use
+			f.setLastModified(System.currentTimeMillis());
+			return Uri.fromFile(f);
+		}
+		File none = new File(dir, FILENAME_PREFIX + key + NONE_SUFFIX);
+		if (none.exists()) {
+			if (System.currentTimeMillis() - none.lastModified() < NONE_TTL) {
+				known_missing++;
+				return null;
+			}
+			none.delete();
+		}
+		
+		Uri track_uri = MediaIndex.find_track_uri(context, track.id, track.artist, track.title);
+		if (track_uri == null) {
+			// not (yet) in MediaStore: no marker, it may be indexed soon
+			missing++;
+			return null;
+		}
+		byte[] picture = null;
+		MediaMetadataRetriever retriever = new MediaMetadataRetriever();
+		try {
+			retriever.setDataSource(context, track_uri);
+			picture = retriever.getEmbeddedPicture();
+		} catch (RuntimeException e) {
+			// thrown for files the retriever can't parse
+			Log.i(NowPlayingPlugin.LOG_TAG, "embedded art: " + e);
+		} finally {
+			retriever.release();
+		}
+		if (picture == null) {
+			mark_missing(dir, none);
+			return null;
+		}
+		
+		Bitmap bitmap = BitmapDecoder.decode(picture, TARGET_WIDTH, TARGET_HEIGHT);
+		if (bitmap == null) {
+			mark_missing(dir, none);
+			return null;
+		}
+		File tmp = new File(dir, FILENAME_PREFIX + key + TMP_SUFFIX);
+		try {
+			FileOutputStream out = new FileOutputStream(tmp);
+			try {
+				bitmap.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, out);
+			} finally {
+				out.close();
+			}
+			if (!tmp.renameTo(f)) {
+				tmp.delete();
+				return null;
+			}
+		} catch (IOException e) {
+			Log.i(NowPlayingPlugin.LOG_TAG, e.toString());
+			tmp.delete();
+			return null;
+		} finally {
+			BitmapDecoder.release(bitmap);
+		}
+		extracted++;
+		trim(dir);
+		return Uri.fromFile(f);
+	}
+	
+	private static void mark_missing(File dir, File none) {
+		missing++;
+		try {
+			if (!none.createNewFile()) {
+				none.setLastModified(System.currentTimeMillis());
+			}
+		} catch (IOException e) {
+			Log.i(NowPlayingPlugin.LOG_TAG, e.toString());
+			return;
+		}
+		trim(dir);
+	}
+	
+	// one entry per album (per title, for tracks without an album)
+	private static String key_of(Snapshot track) {
+		String name = (track.album != null) ? track.album : track.title;
+		if (name == null) return null;
+		String key = track.artist + "\u001f" + name;
+		try {
+			return CacheFiles.sha1_hex(key.getBytes("UTF-8"));
+		} catch (UnsupportedEncodingException e) {
+			return Integer.toHexString(key.hashCode());
+		}
+	}
+	
+	private static File get_dir(Context context) {
+		File dir = new File(context.getCacheDir(), DIR_NAME);
+		if (!dir.exists()) {
+			dir.mkdirs();
+		}
+		return dir;
+	}
+	
+	// delete least recently used files until under MAX_BYTES and MAX_FILES
+	private static void trim(File dir) {
+		File[] files = dir.listFiles();
+		if (files == null) return;
+		long total = 0;
+		for (File f : files) {
+			total += f.length();
+		}
+		int count = files.length;
+		if ( (total <= MAX_BYTES) && (count <= MAX_FILES) ) return;
+		CacheFiles.sort_oldest_first(files);
+		for (int i = 0; (i < files.length) && ( (total > MAX_BYTES) || (count > MAX_FILES) ); i++) {
+			total -= files[i].length();
+			count--;
+			files[i].delete();
+		}
+	}
+	
+	static synchronized String get_stats() {
+		return "embedded art hits = " + hits + " extracted = " + extracted + " missing = " + missing + " known missing = " + known_missing;
+	}
+}
@@ -0,0 +1,318 @@
+package com.pennas.canvasnowplayingplugin;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.Context;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Handler;
+import android.provider.MediaStore;
+import android.util.Log;
+
+import com.pennas.pebblecanvas.plugin.PluginWorkQueue;
+
+/**
+ * In-memory index of the MediaStore audio table, for finding a track's album_id (or the track itself) without
+ * querying it each time.
+ * 
+ * Built lazily on first use, then kept up to date by a ContentObserver which re-reads only rows added or
+ * modified since the last scan, and drops rows which have been deleted. Falls back to direct (parameterised) queries if the index can't be built
+ */
+final class MediaIndex {
+	static final long NO_ID = -9999;
+	
+	private static final Uri MEDIA_URI = MediaStore.Audio.Media.EXTERNAL_CONTENT_URI;
+	private static final String[] INDEX_COLS = new String[] {
+		MediaStore.Audio.Media._ID, MediaStore.Audio.Media.ALBUM_ID, MediaStore.Audio.Media.ARTIST,
+		MediaStore.Audio.Media.TITLE, MediaStore.Audio.Media.DATE_MODIFIED };
+	private static final int COL_ID = 0;
+	private static final int COL_ALBUM_ID = 1;
+	private static final int COL_ARTIST = 2;
+	private static final int COL_TITLE = 3;
+	private static final int COL_DATE_MODIFIED = 4;
+	// media scanner sends many change notifications in a row; refresh once they settle
+	private static final long REFRESH_DELAY_MS = 2000;
+	
+	private static final class Entry {
+		final long album_id;
+		final String artist, title;
+		
+		Entry(long album_id, String artist, String title) {
+			this.album_id = album_id;
+			this.artist = artist;
+			this.title = title;
+		}
+	}
+	
+	private static final class ArtistTitle {
+		final String artist, title;
+		
+		ArtistTitle(String artist, String title) {
+			this.artist = artist;
+			this.title = title;
+		}
+		
+		@Override
+		public int hashCode() {
+			return ((artist == null) ? 0 : artist.hashCode()) * 31 + ((title == null) ? 0 : title.hashCode());
+		}
+		
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof ArtistTitle)) return false;
+			ArtistTitle other = (ArtistTitle) o;
+			return equal(artist, other.artist) && equal(title, other.title);
+		}
+	}
+	
+	private static final Object lock = new Object();
+	private static HashMap<Long, Entry> by_id;
+	// -> track _ID
+	private static HashMap<ArtistTitle, Long> by_artist_title;
+	// DATE_MODIFIED (seconds) of the newest row seen, and highest _ID seen. files copied in keep their own
+	// (older) mtime, so new rows are found by ID, and rows modified in place by date
+	private static long last_modified = 0;
+	private static long max_id = 0;
+	private static ContentObserver observer;
+	// refreshes are queries, so they run on the work pool rather than the shared timer thread
+	private static final int WORK_KEY = -2;
+	
+	private MediaIndex() { }
+	
+	/**
+	 * @return album_id of the track, or NO_ID if not found
+	 */
+	static long find_album_id(Context context, long track_id, String artist, String title) {
+		synchronized (lock) {
+			if ( (by_id == null) && !build(context) ) {
+				return query_album_id(context.getContentResolver(), track_id, artist, title);
+			}
+			long id = find_id_locked(track_id, artist, title);
+			if (id == NO_ID) return NO_ID;
+			long album_id = by_id.get(id).album_id;
+			if (BuildConfig.DEBUG) Log.i(NowPlayingPlugin.LOG_TAG, "album_id = " + album_id);
+			return album_id;
+		}
+	}
+	
+	/**
+	 * For the rare case that the audio file itself is needed (e.g. for embedded art)
+	 * 
+	 * @return MediaStore URI of the track, or null if not found
+	 */
+	static Uri find_track_uri(Context context, long track_id, String artist, String title) {
+		synchronized (lock) {
+			if ( (by_id == null) && !build(context) ) {
+				return query_track_uri(context.getContentResolver(), track_id, artist, title);
+			}
+			long id = find_id_locked(track_id, artist, title);
+			return (id == NO_ID) ? null : ContentUris.withAppendedId(MEDIA_URI, id);
+		}
+	}
+	
+	// _ID of the track in the index, or NO_ID
+	private static long find_id_locked(long track_id, String artist, String title) {
+		Entry entry = by_id.get(track_id);
+		// if track ID came from poweramp or similar, it might match wrong db entry. check
+		if ( (entry != null) && equal(entry.artist, artist) ) return track_id;
+		
+		// try matching on artist/title (for eg poweramp which supplies non-standard track id)
+		if ( (artist == null) || (title == null) ) return NO_ID;
+		Long id = by_artist_title.get(new ArtistTitle(artist, title));
+		return (id == null) ? NO_ID : id.longValue();
+	}
+	
+	// used if the index can't be built
+	private static Uri query_track_uri(ContentResolver resolver, long track_id, String artist, String title) {
+		String[] cols = new String[] { MediaStore.Audio.Media._ID, MediaStore.Audio.Media.ARTIST };
+		Cursor cur = resolver.query(MEDIA_URI, cols, MediaStore.Audio.Media._ID + " = ?",
+				new String[] { Long.toString(track_id) }, null);
+		if (cur != null) {
+			try {
+				if ( cur.moveToFirst() && equal(cur.getString(1), artist) ) {
+					return ContentUris.withAppendedId(MEDIA_URI, cur.getLong(0));
+				}
+			} finally {
+				cur.close();
+			}
+		}
+		
+		if ( (artist == null) || (title == null) ) return null;
+		cur = resolver.query(MEDIA_URI, cols,
+				"(" + MediaStore.Audio.Media.ARTIST + " = ?) AND (" + MediaStore.Audio.Media.TITLE + " = ?)",
+				new String[] { artist, title }, null);
+		if (cur != null) {
+			try {
+				if (cur.moveToFirst()) {
+					return ContentUris.withAppendedId(MEDIA_URI, cur.getLong(0));
+				}
+			} finally {
+				cur.close();
+			}
+		}
+		return null;
+	}
+	
+	// full scan. returns false if mediastore isn't available
+	private static boolean build(Context context) {
+		long start = System.currentTimeMillis();
+		ContentResolver resolver = context.getContentResolver();
+		Cursor cursor = resolver.query(MEDIA_URI, INDEX_COLS, null, null, null);
+		if (cursor == null) return false;
+		
+		by_id = new HashMap<Long, Entry>(cursor.getCount() * 2);
+		by_artist_title = new HashMap<ArtistTitle, Long>(cursor.getCount() * 2);
+		last_modified = 0;
+		max_id = 0;
+		try {
+			add_rows(cursor);
+		} finally {
+			cursor.close();
+		}
+		Log.i(NowPlayingPlugin.LOG_TAG, "media index built: " + by_id.size() + " tracks in " + (System.currentTimeMillis() - start) + "ms");
+		
+		start_observing(context.getApplicationContext());
+		return true;
+	}
+	
+	// only rows added or changed since the last scan, then drop any rows which no longer exist
+	private static void refresh(Context context) {
+		synchronized (lock) {
+			if (by_id == null) return;
+			ContentResolver resolver = context.getContentResolver();
+			Cursor cursor = resolver.query(MEDIA_URI, INDEX_COLS,
+					"(" + MediaStore.Audio.Media._ID + " > ?) OR (" + MediaStore.Audio.Media.DATE_MODIFIED + " >= ?)",
+					new String[] { Long.toString(max_id), Long.toString(last_modified) }, null);
+			if (cursor == null) return;
+			int n;
+			try {
+				n = add_rows(cursor);
+			} finally {
+				cursor.close();
+			}
+			int removed = remove_deleted(resolver);
+			Log.i(NowPlayingPlugin.LOG_TAG, "media index refreshed: " + n + " rows, " + removed + " removed");
+		}
+	}
+	
+	// IDs only, and only walked if the row count says something has gone
+	private static int remove_deleted(ContentResolver resolver) {
+		Cursor cursor = resolver.query(MEDIA_URI, new String[] { MediaStore.Audio.Media._ID }, null, null, null);
+		if (cursor == null) return 0;
+		try {
+			if (cursor.getCount() == by_id.size()) return 0;
+			HashSet<Long> ids = new HashSet<Long>(cursor.getCount() * 2);
+			while (cursor.moveToNext()) {
+				ids.add(cursor.getLong(0));
+			}
+			int removed = 0;
+			Iterator<Map.Entry<Long, Entry>> it = by_id.entrySet().iterator();
+			while (it.hasNext()) {
+				Map.Entry<Long, Entry> e = it.next();
+				if (ids.contains(e.getKey())) continue;
+				Entry entry = e.getValue();
+				remove_artist_title(entry, e.getKey());
+				it.remove();
+				removed++;
+			}
+			return removed;
+		} finally {
+			cursor.close();
+		}
+	}
+	
+	private static int add_rows(Cursor cursor) {
+		int n = 0;
+		while (cursor.moveToNext()) {
+			long id = cursor.getLong(COL_ID);
+			long album_id = cursor.getLong(COL_ALBUM_ID);
+			String artist = cursor.getString(COL_ARTIST);
+			String title = cursor.getString(COL_TITLE);
+			
+			Entry old = by_id.put(id, new Entry(album_id, artist, title));
+			if (old != null) {
+				// row changed: its old artist/title may no longer be valid
+				remove_artist_title(old, id);
+			}
+			by_artist_title.put(new ArtistTitle(artist, title), id);
+			last_modified = Math.max(last_modified, cursor.getLong(COL_DATE_MODIFIED));
+			max_id = Math.max(max_id, id);
+			n++;
+		}
+		return n;
+	}
+	
+	// unless another row with the same artist/title has taken the entry over
+	private static void remove_artist_title(Entry entry, long id) {
+		ArtistTitle key = new ArtistTitle(entry.artist, entry.title);
+		Long current = by_artist_title.get(key);
+		if ( (current != null) && (current.longValue() == id) ) {
+			by_artist_title.remove(key);
+		}
+	}
+	
+	private static void start_observing(final Context app_context) {
+		if (observer != null) return;
+		final Handler handler = PluginWorkQueue.get().get_handler();
+		final Runnable refresh = new Runnable() {
+			@Override
+			public void run() {
+				PluginWorkQueue.get().submit(WORK_KEY, new Runnable() {
+					@Override
+					public void run() {
+						refresh(app_context);
+					}
+				});
+			}
+		};
+		observer = new ContentObserver(handler) {
+			@Override
+			public void onChange(boolean self) {
+				handler.removeCallbacks(refresh);
+				handler.postDelayed(refresh, REFRESH_DELAY_MS);
+			}
+		};
+		app_context.getContentResolver().registerContentObserver(MEDIA_URI, true, observer);
+	}
+	
+	// used if the index can't be built
+	private static long query_album_id(ContentResolver resolver, long track_id, String artist, String title) {
+		String[] track_cols = new String[] { MediaStore.Audio.Media.ALBUM_ID, MediaStore.Audio.Media.ARTIST };
+		Cursor cur = resolver.query(MEDIA_URI, track_cols, MediaStore.Audio.Media._ID + " = ?",
+				new String[] { Long.toString(track_id) }, null);
+		if (cur != null) {
+			try {
+				if ( cur.moveToFirst() && equal(cur.getString(1), artist) ) {
+					return cur.getLong(0);
+				}
+			} finally {
+				cur.close();
+			}
+		}
+		
+		if ( (artist == null) || (title == null) ) return NO_ID;
+		cur = resolver.query(MEDIA_URI, track_cols,
+				"(" + MediaStore.Audio.Media.ARTIST + " = ?) AND (" + MediaStore.Audio.Media.TITLE + " = ?)",
+				new String[] { artist, title }, null);
+		if (cur != null) {
+			try {
+				if (cur.moveToFirst()) {
+					return cur.getLong(0);
+				}
+			} finally {
+				cur.close();
+			}
+		}
+		return NO_ID;
+	}
+	
+	private static boolean equal(String a, String b) {
+		return (a == null) ? (b == null) : a.equals(b);
+	}
+}
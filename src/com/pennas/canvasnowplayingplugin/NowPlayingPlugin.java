@@ -4,21 +4,22 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
-
-import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReference;
 
 import android.content.ContentUris;
 import android.content.Context;
 import android.content.SharedPreferences;
-import android.database.Cursor;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.net.Uri;
 import android.preference.PreferenceManager;
-import android.provider.MediaStore;
 import android.util.Log;
 
+import com.pennas.canvasnowplayingplugin.core.TrackDiff;
+import com.pennas.pebblecanvas.plugin.BitmapDecoder;
+import com.pennas.pebblecanvas.plugin.MaskResolver;
 import com.pennas.pebblecanvas.plugin.PebbleCanvasPlugin;
+import com.pennas.pebblecanvas.plugin.PluginStats;
+import com.pennas.pebblecanvas.plugin.core.PluginParams;
 
 public class NowPlayingPlugin extends PebbleCanvasPlugin {
 	public static final String LOG_TAG = "CANV_NOW_PLAY";
@@ -30,12 +31,28 @@ public class NowPlayingPlugin extends PebbleCanvasPlugin {
 	private static final int MASK_ARTIST = 0;
 	private static final int MASK_TITLE = 1;
 	private static final int MASK_ALBUM = 2;
+	// playback position: elapsed, remaining, progress bar. indexed by PlaybackClock.KIND_*
+	private static final String[] POSITION_MASKS = { "%E", "%R", "%P" };
+	private static final String[] POSITION_EXAMPLES = { "1:23", "2:45", "###-------" };
 	private static final String PREF_ART = "ART";
+	private static final String IMAGE_AUTHORITY = "com.pennas.canvasnowplayingplugin.canvasimages";
+	// param option: show this player's track, rather than whichever player was most recently playing
+	private static final String PARAM_PLAYER = "player";
+	// param options for position masks: "res=m" for whole minutes, "width=N" for progress bar length
+	private static final String PARAM_RESOLUTION = "res";
+	private static final String RESOLUTION_MINUTES = "m";
+	private static final String PARAM_WIDTH = "width";
+	private static final int DEFAULT_BAR_WIDTH = 10;
+	private static final int MAX_BAR_WIDTH = 40;
+	
+	static {
+		set_debug_logging(BuildConfig.DEBUG);
+	}
 	
 	// send plugin metadata to Canvas when requested
 	@Override
 	protected ArrayList<PluginDefinition> get_plugin_definitions(Context context) {
-		Log.i(LOG_TAG, "get_plugin_definitions");
+		if (BuildConfig.DEBUG) Log.i(LOG_TAG, "get_plugin_definitions");
 		
 		// create a list of plugins provided by this app
 		ArrayList<PluginDefinition> plugins = new ArrayList<PluginDefinition>();
@@ -44,201 +61,391 @@ public class NowPlayingPlugin extends PebbleCanvasPlugin {
 		TextPluginDefinition tplug = new TextPluginDefinition();
 		tplug.id = ID_NOW_PLAYING;
 		tplug.name = context.getString(R.string.plugin_name_now_playing);
-		tplug.format_mask_descriptions = new ArrayList<String>(Arrays.asList(context.getResources().getStringArray(R.array.format_mask_descs)));
+		String[] descs = context.getResources().getStringArray(R.array.format_mask_descs);
 		// populate example content for each field (optional) to be display in the format mask editor
-		ArrayList<String> examples = new ArrayList<String>();
-		examples.add(current_track.artist);
-		examples.add(current_track.title);
-		examples.add(current_track.album);
-		tplug.format_mask_examples = examples;
-		tplug.format_masks = new ArrayList<String>(Arrays.asList(MASKS));
+		for (int i = 0; i < MASKS.length; i++) {
+			tplug.add_format_mask(MASKS[i], descs[i], track_field(current.get(), i), new TrackFieldResolver(i));
+		}
+		for (int i = 0; i < POSITION_MASKS.length; i++) {
+			tplug.add_format_mask(POSITION_MASKS[i], descs[MASKS.length + i], POSITION_EXAMPLES[i], new PositionResolver(i));
+		}
 		tplug.default_format_string = "%A - %T";
+		tplug.params_description = context.getString(R.string.params_desc_now_playing);
 		plugins.add(tplug);
 		
 		// album art
 		ImagePluginDefinition iplug = new ImagePluginDefinition();
 		iplug.id = ID_ALBUM_ART;
 		iplug.name = context.getString(R.string.plugin_name_album_art);
+		iplug.params_description = context.getString(R.string.params_desc_album_art);
 		plugins.add(iplug);
 		
 		return plugins;
 	}
 	
-	private static boolean process_just_started = true;
-	private static boolean got_now_playing = false;
+	private static volatile boolean process_just_started = true;
+	// for the restore only: set_track_details holds the class lock through MediaStore lookups and embedded art
+	// extraction, which the first request after a start shouldn't have to wait behind
+	private static final Object restore_lock = new Object();
 	
 	// send current text values to canvas when requested
-	@Override
-	protected String get_format_mask_value(int def_id, String format_mask, Context context, String param) {
-		//Log.i(LOG_TAG, "get_format_mask_value def_id = " + def_id + " format_mask = '" + format_mask + "'");
-		if (process_just_started) {
-			Log.i(LOG_TAG, "process_just_started");
-			process_just_started = false;
-			if (!got_now_playing) {
-				load_from_prefs(context);
-			}
+	private static final class TrackFieldResolver implements MaskResolver {
+		private final int field;
+		
+		TrackFieldResolver(int field) {
+			this.field = field;
 		}
 		
-		if (def_id == ID_NOW_PLAYING) {
-			// which field to return current value for?
-			if (format_mask.equals(MASKS[MASK_ARTIST])) {
-				return current_track.artist;
-			} else if (format_mask.equals(MASKS[MASK_TITLE])) {
-				return current_track.title;
-			} else if (format_mask.equals(MASKS[MASK_ALBUM])) {
-				return current_track.album;
+		@Override
+		public String resolve(Context context, String param) {
+			check_just_started(context);
+			return track_field(track_for(param), field);
+		}
+	}
+	
+	// position of the active player, at the resolution the param asks for
+	private static final class PositionResolver implements MaskResolver {
+		private final int kind;
+		
+		PositionResolver(int kind) {
+			this.kind = kind;
+		}
+		
+		@Override
+		public String resolve(Context context, String param) {
+			boolean minutes = RESOLUTION_MINUTES.equals(PluginParams.get(param, PARAM_RESOLUTION));
+			int width = DEFAULT_BAR_WIDTH;
+			String width_param = PluginParams.get(param, PARAM_WIDTH);
+			if (width_param != null) {
+				try {
+					width = Math.max(1, Math.min(MAX_BAR_WIDTH, Integer.parseInt(width_param)));
+				} catch (NumberFormatException e) { /* */ }
+			}
+			long[] pos = PlaybackClock.get_position(kind + "#" + param, kind, minutes ? 60 * 1000 : 1000, width);
+			if (pos == null) return null;
+			long elapsed = pos[0];
+			long duration = pos[1];
+			
+			if (kind == PlaybackClock.KIND_ELAPSED) {
+				return format_time(elapsed, minutes);
 			}
+			if (duration == PlaybackClock.UNKNOWN) return null;
+			if (kind == PlaybackClock.KIND_REMAINING) {
+				return format_time(duration - elapsed, minutes);
+			}
+			int done = (int) (elapsed * width / duration);
+			StringBuilder sb = new StringBuilder(width);
+			for (int i = 0; i < width; i++) {
+				sb.append((i < done) ? '#' : '-');
+			}
+			return sb.toString();
+		}
+	}
+	
+	// m:ss (h:mm:ss from an hour), or whole minutes e.g. 3m
+	private static String format_time(long ms, boolean minutes) {
+		long secs = ms / 1000;
+		if (minutes) {
+			return (secs / 60) + "m";
+		}
+		StringBuilder sb = new StringBuilder();
+		if (secs >= 3600) {
+			sb.append(secs / 3600).append(':');
+			append_2_digits(sb, (secs / 60) % 60);
+		} else {
+			sb.append(secs / 60);
+		}
+		sb.append(':');
+		append_2_digits(sb, secs % 60);
+		return sb.toString();
+	}
+	
+	private static void append_2_digits(StringBuilder sb, long v) {
+		if (v < 10) sb.append('0');
+		sb.append(v);
+	}
+	
+	// displayed position has moved on
+	static void notify_position_changed(Context context) {
+		if (context == null) return;
+		notify_canvas_updates_available(ID_NOW_PLAYING, context);
+	}
+	
+	// the active track, or the track of the player this layer is pinned to
+	private static Snapshot track_for(String param) {
+		String player = PluginParams.get(param, PARAM_PLAYER);
+		if (player == null) return current.get();
+		return PlayerSessions.get_pinned_track(player);
+	}
+	
+	private static String track_field(Snapshot track, int field) {
+		switch (field) {
+			case MASK_ARTIST: return track.artist;
+			case MASK_TITLE: return track.title;
+			case MASK_ALBUM: return track.album;
 		}
-		Log.i(LOG_TAG, "no matching mask found");
 		return null;
 	}
 	
+	private static void check_just_started(Context context) {
+		// only the first request after start takes the lock
+		if (!process_just_started) return;
+		synchronized (restore_lock) {
+			if (process_just_started) {
+				Log.i(LOG_TAG, "process_just_started");
+				load_from_prefs(context);
+				process_just_started = false;
+			}
+		}
+	}
+	
 	// save values to preferences every time they change, because:
 	//  - this process might be killed
 	//  - values may not be requested by canvas straight away
 	//  - will return values on first load
 	private static void load_from_prefs(Context context) {
-		SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
-		current_track.artist = prefs.getString(MASKS[MASK_ARTIST], null);
-		current_track.title = prefs.getString(MASKS[MASK_TITLE], null);
-		current_track.album = prefs.getString(MASKS[MASK_ALBUM], null);
-		String uri = prefs.getString(PREF_ART, null);
-		if (uri != null) {
-			current_track.album_art_uri = Uri.parse(uri);
+		Snapshot prev = current.get();
+		// nothing from a player yet
+		if (prev.seq != 0) return;
+		Track stored = TrackStateStore.load(context);
+		if (stored == null) {
+			// written by older versions, one pref per field
+			SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+			stored = new Track();
+			stored.artist = prefs.getString(MASKS[MASK_ARTIST], null);
+			stored.title = prefs.getString(MASKS[MASK_TITLE], null);
+			stored.album = prefs.getString(MASKS[MASK_ALBUM], null);
+			String uri = prefs.getString(PREF_ART, null);
+			if (uri != null) {
+				stored.album_art_uri = Uri.parse(uri);
+			}
 		}
-		Log.i(LOG_TAG, "loaded artist = " + current_track.artist + " title = "
-				 + current_track.title + " album = " + current_track.album + " art = " + current_track.album_art_uri);
+		Snapshot loaded = prev.with_track(stored).with_album_art(stored.album_art_uri);
+		// a player may have reported while reading (set_track_details doesn't wait for this): its track wins
+		if (!current.compareAndSet(prev, loaded)) return;
+		Log.i(LOG_TAG, "loaded artist = " + loaded.artist + " title = "
+				 + loaded.title + " album = " + loaded.album + " art = " + loaded.album_art_uri);
+		invalidate_definitions();
 	}
 	
+	// batched, and skipped if nothing changed
 	private static void save_to_prefs(Context context) {
-		SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
-		prefs.edit().putString(MASKS[MASK_ARTIST], current_track.artist).commit();
-		prefs.edit().putString(MASKS[MASK_TITLE], current_track.title).commit();
-		prefs.edit().putString(MASKS[MASK_ALBUM], current_track.album).commit();
-		String art;
-		if (current_track.album_art_uri == null) {
-			art = null;
-		} else {
-			art = current_track.album_art_uri.toString();
-		}
-		prefs.edit().putString(PREF_ART, art).commit();
+		TrackStateStore.save(context, current.get());
 	}
 
 	// send bitmap value to canvas when requested
 	@Override
 	protected Bitmap get_bitmap_value(int def_id, Context context, String param) {
-		Log.i(LOG_TAG, "get_bitmap_value def_id = " + def_id);
+		if (BuildConfig.DEBUG) Log.i(LOG_TAG, "get_bitmap_value def_id = " + def_id);
 		
 		if (def_id == ID_ALBUM_ART){
-			InputStream in = null;
-			if (current_track.album_art_uri == null) {
-				return null;
-			}
-		    try {
-		    	Log.i(LOG_TAG, "loading album art: " + current_track.album_art_uri);
-				in = context.getContentResolver().openInputStream(current_track.album_art_uri);
-				Bitmap artwork = BitmapFactory.decodeStream(in);
-				return artwork;
-			} catch (FileNotFoundException e) {
+			check_just_started(context);
+			Uri uri = track_for(param).album_art_uri;
+			if (uri == null) {
 				return null;
-			} catch (IllegalArgumentException e) {
-				return null;
-			} catch (IllegalStateException e) {
-				return null;
-			} finally {
-				if (in != null) {
-					try {
-						in.close();
-					} catch (IOException e) { /* */ }
-				}
 			}
+			if (BuildConfig.DEBUG) Log.i(LOG_TAG, "loading album art: " + uri);
+			// art is shown at watch size at most; don't decode a full-size cover
+			return BitmapDecoder.decode(context, uri, PEBBLE_SCREEN_WIDTH, PEBBLE_SCREEN_HEIGHT);
 		}
 		Log.i(LOG_TAG, "no matching id found");
 		return null;
 	}
 	
-	private static Track current_track = new Track();
+	// bitmaps come from BitmapDecoder and aren't kept, so can be reused
+	@Override
+	protected void on_bitmap_encoded(int def_id, Bitmap bitmap) {
+		BitmapDecoder.release(bitmap);
+	}
+	
+	// restore the last track while the SDK builds definitions, rather than in the first request
+	@Override
+	protected void on_cold_start(Context context) {
+		check_just_started(context);
+	}
+	
+	// mediastore queries, decoding and file writes don't belong on the main thread
+	@Override
+	protected boolean process_in_background() {
+		return true;
+	}
+	
+	@Override
+	protected String get_debug_stats() {
+		return "receiver events = " + NowPlayingReceiver.get_events_received()
+				+ " applied = " + NowPlayingReceiver.get_events_applied() + "\n"
+				+ TrackStateStore.get_stats() + "\n"
+				+ PlayerSessions.get_stats() + "\n"
+				+ PlaybackClock.get_stats() + "\n"
+				+ ArtCache.get_stats();
+	}
+	
+	@Override
+	protected String get_image_provider_authority() {
+		return IMAGE_AUTHORITY;
+	}
+	
+	// rendered art only depends on the album and the user's params, so let the SDK cache it
+	@Override
+	protected String get_bitmap_cache_key(int def_id, Context context, String param) {
+		if (def_id != ID_ALBUM_ART) return null;
+		check_just_started(context);
+		Uri uri = track_for(param).album_art_uri;
+		if (uri == null) return null;
+		// mediastore album art, or a file in the embedded art cache
+		return uri.toString() + "#" + param;
+	}
+	
+	// readers take whatever snapshot is current, without locking. writers publish a new snapshot per change with
+	// compareAndSet: set_track_details and set_album_art hold the class lock, load_from_prefs (only while nothing
+	// has been published) doesn't
+	private static final AtomicReference<Snapshot> current = new AtomicReference<Snapshot>(Snapshot.EMPTY);
 	
 	// only notify canvas of an update if it has actually changed
 	private static void set_album_art(Uri uri, Context context) {
-		if ( ((current_track.album_art_uri == null) && (uri != null)) 
-		  || ((current_track.album_art_uri != null) && (uri != null) && !current_track.album_art_uri.equals(uri))
-		  || (uri == null) ) {
-			Log.i(LOG_TAG, "set_album_art: " + uri);
-			current_track.album_art_uri = uri;
+		Snapshot prev, next;
+		do {
+			prev = current.get();
+			next = prev.with_album_art(uri);
+		} while ( (next != prev) && !current.compareAndSet(prev, next) );
+		if (next != prev) {
+			if (BuildConfig.DEBUG) Log.i(LOG_TAG, "set_album_art: " + uri);
+			if (uri != null) {
+				// canvas will ask for the new art shortly; have it decoded by then
+				prefetch_image(NowPlayingPlugin.class, ID_ALBUM_ART, context);
+			}
 			notify_canvas_updates_available(ID_ALBUM_ART, context);
 		}
 		// always save here (also saves track info)
 		save_to_prefs(context);
 	}
 	
+	// track as read from a player broadcast or storage
 	public static class Track {
 		String artist, title, album;
 		long id;
 		Uri album_art_uri;
+		String player;
+		// as reported with the track, and elapsedRealtime when received
+		long position = PlaybackClock.UNKNOWN;
+		long position_time;
+		long duration = PlaybackClock.UNKNOWN;
+		// false if the player's last broadcast in a burst said it had stopped
+		boolean playing = true;
 	}
 	
-	// only notify canvas of an update if it has actually changed
-	public static void set_track_details(Track track, Context context) {
-		if ( ((current_track.artist == null) && (track.artist != null)) 
-		  || ((current_track.artist != null) && (track.artist != null) && !current_track.artist.equals(track.artist))
-		  || ((current_track.title == null) && (track.title != null)) 
-		  || ((current_track.title != null) && (track.title != null) && !current_track.title.equals(track.title))
-		  || ((current_track.album == null) && (track.album != null)) 
-		  || ((current_track.album != null) && (track.album != null) && !current_track.album.equals(track.album)) ) {
-			Log.i(LOG_TAG, "set_track_details artist '" + track.artist + "' title '" + track.title + "' album '" + track.album + "'");
-			current_track.album = track.album;
-			current_track.artist = track.artist;
-			current_track.id = track.id;
-			current_track.title = track.title;
-			got_now_playing = true;
+	/**
+	 * Immutable view of the current track. seq goes up with every change, so two snapshots with
+	 * the same seq are the same state
+	 */
+	static final class Snapshot {
+		static final Snapshot EMPTY = new Snapshot(null, null, null, 0, null, 0);
+		
+		final String artist, title, album;
+		final long id;
+		final Uri album_art_uri;
+		final int seq;
+		
+		private Snapshot(String artist, String title, String album, long id, Uri album_art_uri, int seq) {
+			this.artist = artist;
+			this.title = title;
+			this.album = album;
+			this.id = id;
+			this.album_art_uri = album_art_uri;
+			this.seq = seq;
+		}
+		
+		// this, if the track is the same as far as canvas is concerned
+		Snapshot with_track(Track t) {
+			if (!TrackDiff.changed(artist, title, album, t.artist, t.title, t.album)) return this;
+			return new Snapshot(t.artist, t.title, t.album, t.id, album_art_uri, seq + 1);
+		}
+		
+		Snapshot with_album_art(Uri uri) {
+			if ( (uri == null) ? (album_art_uri == null) : uri.equals(album_art_uri) ) return this;
+			return new Snapshot(artist, title, album, id, uri, seq + 1);
+		}
+	}
+	
+	// only notify canvas of an update if it has actually changed. the player which sent it becomes the active one
+	public static synchronized void set_track_details(Track track, Context context) {
+		PlayerSessions.Session session = PlayerSessions.get(track.player);
+		Snapshot session_prev = session.track;
+		Snapshot session_next = session_prev.with_track(track);
+		boolean session_changed = (session_next.seq != session_prev.seq);
+		if (session_changed) {
+			session.track = session_next;
+			session.art_resolved = false;
+		}
+		
+		// retried if the restore published in between, so the track goes on top of it rather than replacing it
+		Snapshot prev, next;
+		do {
+			prev = current.get();
+			next = prev.with_track(track);
+		} while ( (next != prev) && !current.compareAndSet(prev, next) );
+		if (next != prev) {
+			if (BuildConfig.DEBUG) Log.i(LOG_TAG, "set_track_details artist '" + track.artist + "' title '" + track.title + "' album '" + track.album + "'");
+			// format mask examples show the current track
+			invalidate_definitions();
+			notify_canvas_updates_available(ID_NOW_PLAYING, context);
+			// also saves prefs
+			set_album_art(get_album_art(context, session), context);
+		} else if (session_changed && PlayerSessions.is_pinned(session.player)) {
+			// not the active player, but layers pinned to it need the new track
+			get_album_art(context, session);
 			notify_canvas_updates_available(ID_NOW_PLAYING, context);
-			get_album_art(context);
-			// prefs saved in get_album_art
+			notify_canvas_updates_available(ID_ALBUM_ART, context);
 		}
+		PlaybackClock.update(context, session.player, session_changed, track.playing, track.position, track.position_time, track.duration);
 	}
 	
 	private static final Uri ARTWORK_URI = Uri.parse("content://media/external/audio/albumart");
-	private static final long NO_ID = -9999;
 	
-	private static void get_album_art(Context context) {
-		//Log.i(LOG_TAG, "get_album_art");
-		long album_id = NO_ID;
-		String [] track_cols = new String [] { MediaStore.Audio.Media.ALBUM_ID, MediaStore.Audio.Media.ARTIST };
-		String query = MediaStore.Audio.Media._ID + " = " + current_track.id;
-		Cursor curTracks = context.getContentResolver().query(MediaStore.Audio.Media.EXTERNAL_CONTENT_URI, track_cols, query, null, null);
-		curTracks.moveToFirst();
-		if (!curTracks.isAfterLast()) {
-			String artist_check = curTracks.getString(1);
-			// if track ID came from poweramp or similar, it might match wrong db entry. check
-			if (artist_check.equals(current_track.artist)) {
-				album_id = curTracks.getLong(0);
-				Log.i(LOG_TAG, "album_id 1 = " + album_id);
-			} else {
-				Log.i(LOG_TAG, "album_id 1 didn't match artist");
+	private static boolean has_art(Context context, Uri uri) {
+		InputStream in = null;
+		try {
+			in = context.getContentResolver().openInputStream(uri);
+			return (in != null);
+		} catch (FileNotFoundException e) {
+			return false;
+		} catch (IllegalStateException e) {
+			return false;
+		} finally {
+			if (in != null) {
+				try {
+					in.close();
+				} catch (IOException e) { /* */ }
 			}
 		}
-		curTracks.close();
+	}
+	
+	// album art for the session's track. only looked up once per track, so switching back to a player is cheap
+	private static Uri get_album_art(Context context, PlayerSessions.Session session) {
+		Snapshot track = session.track;
+		if (session.art_resolved) {
+			PlayerSessions.count_art_reused();
+			return track.album_art_uri;
+		}
+		//Log.i(LOG_TAG, "get_album_art");
+		long start = PluginStats.start();
+		long album_id = MediaIndex.find_album_id(context, track.id, track.artist, track.title);
+		PluginStats.end(PluginStats.STAGE_MEDIASTORE, start);
 		
-		// try matching on artist/title/album (for eg poweramp which supplies non-standard track id)
-		if (album_id == NO_ID) {
-			query = "(" + MediaStore.Audio.Media.ARTIST + " = \"" + current_track.artist + "\")"
-			 + " AND (" + MediaStore.Audio.Media.TITLE + " = \"" + current_track.title + "\")";
-			curTracks = context.getContentResolver().query(MediaStore.Audio.Media.EXTERNAL_CONTENT_URI, track_cols, query, null, null);
-			curTracks.moveToFirst();
-			if (!curTracks.isAfterLast()) {
-				album_id = curTracks.getLong(0);
-				Log.i(LOG_TAG, "album_id 2 = " + album_id);
+		Uri uri = null;
+		if (album_id != MediaIndex.NO_ID) {
+			uri = ContentUris.withAppendedId(ARTWORK_URI, album_id);
+			// mediastore knows the album, but not necessarily any art for it
+			if (!has_art(context, uri)) {
+				uri = null;
 			}
-			curTracks.close();
 		}
-		
-		if (album_id != NO_ID) {
-			Uri uri = ContentUris.withAppendedId(ARTWORK_URI, album_id);
-			set_album_art(uri, context);
-		} else {
-			set_album_art(null, context);
+		if (uri == null) {
+			uri = ArtCache.get_embedded_art(context, track);
 		}
+		session.track = track.with_album_art(uri);
+		session.art_resolved = true;
+		return uri;
 	}
 
 }
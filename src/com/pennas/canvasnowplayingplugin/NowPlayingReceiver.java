@@ -1,9 +1,18 @@
 package com.pennas.canvasnowplayingplugin;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+
 import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.util.Log;
+
 import com.pennas.canvasnowplayingplugin.NowPlayingPlugin.Track;
+import com.pennas.pebblecanvas.plugin.PluginWorkQueue;
 
 public class NowPlayingReceiver extends BroadcastReceiver {
 	private static final String ALBUM = "album";
@@ -11,23 +20,226 @@ public class NowPlayingReceiver extends BroadcastReceiver {
 	private static final String ARTIST = "artist";
 	private static final String ID = "id";
 	private static final String PLAYING = "playing";
+	private static final String POSITION = "position";
+	private static final String DURATION = "duration";
+	// sent by some players; others are told apart by their broadcast action
+	private static final String PACKAGE = "package";
+	// all player broadcasts are processed in order, separately from canvas requests
+	private static final int WORK_KEY = -1;
+	
+	// players send several broadcasts for one change (playstatechanged + metachanged, often twice).
+	// wait until they stop arriving, then apply the merged result once
+	private static final long DEFAULT_SETTLE_MS = 150;
+	// don't hold off forever if a player never stops sending
+	private static final long MAX_SETTLE_MS = 1000;
+	private static long settle_ms = DEFAULT_SETTLE_MS;
+	
+	private static final Object coalesce_lock = new Object();
+	// per player, in order of their latest broadcast
+	private static final LinkedHashMap<String, Track> pending_tracks = new LinkedHashMap<String, Track>();
+	private static long burst_start_time;
+	private static long last_event_time;
+	private static int events_received = 0;
+	private static int events_applied = 0;
+	// a settle check is waiting on the timer thread for the current burst
+	private static boolean check_posted = false;
+	private static Context apply_context;
+	
+	// runs on the shared timer thread, so only decides whether the burst has settled: applying it goes to the pool
+	private static final Runnable settle_check = new Runnable() {
+		@Override
+		public void run() {
+			final ArrayList<Track> tracks;
+			final Context context;
+			synchronized (coalesce_lock) {
+				long due = due_time();
+				if (SystemClock.uptimeMillis() < due) {
+					// more broadcasts since this was posted
+					PluginWorkQueue.get().get_handler().postAtTime(this, due);
+					return;
+				}
+				check_posted = false;
+				tracks = take_pending();
+				context = apply_context;
+			}
+			if (tracks == null) return;
+			PluginWorkQueue.get().submit(WORK_KEY, new Runnable() {
+				@Override
+				public void run() {
+					apply(tracks, context);
+				}
+			});
+		}
+	};
 	
 	@Override
 	public final void onReceive(Context context, Intent intent) {
 		//Log.i(NowPlayingPlugin.LOG_TAG, "onReceive: " + intent.getAction());
-		process_intent(context, intent);
+		Context app_context = context.getApplicationContext();
+		if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB) {
+			// no goAsync to keep the process alive while a burst settles, so apply each broadcast straight away
+			ArrayList<Track> tracks;
+			synchronized (coalesce_lock) {
+				offer(intent);
+				tracks = take_pending();
+			}
+			if (tracks != null) apply(tracks, app_context);
+			return;
+		}
+		synchronized (coalesce_lock) {
+			offer(intent);
+			apply_context = app_context;
+			if (!check_posted) {
+				check_posted = true;
+				PluginWorkQueue.get().get_handler().postAtTime(settle_check, due_time());
+			}
+		}
+	}
+	
+	private static Track read_track(Intent intent) {
+		Track t = new Track();
+		t.artist = intent.getStringExtra(ARTIST);
+		t.title = intent.getStringExtra(TRACK);
+		t.album = intent.getStringExtra(ALBUM);
+		t.id = intent.getLongExtra(ID, 0);
+		t.player = player_of(intent);
+		t.position = read_long(intent, POSITION);
+		t.position_time = SystemClock.elapsedRealtime();
+		t.duration = read_long(intent, DURATION);
+		t.playing = intent.getBooleanExtra(PLAYING, false);
+		return t;
+	}
+	
+	// players disagree on int vs long
+	private static long read_long(Intent intent, String key) {
+		Bundle extras = intent.getExtras();
+		if (extras == null) return PlaybackClock.UNKNOWN;
+		Object o = extras.get(key);
+		if (o instanceof Number) {
+			return ((Number) o).longValue();
+		}
+		return PlaybackClock.UNKNOWN;
 	}
 	
-	public static void process_intent(Context context, Intent intent) {
-		//dump_bundle(intent.getExtras());
+	// e.g. com.sec.android.app.music.metachanged -> com.sec.android.app.music
+	private static String player_of(Intent intent) {
+		String pkg = intent.getStringExtra(PACKAGE);
+		if (pkg != null) return pkg;
+		String action = intent.getAction();
+		if (action == null) return PlayerSessions.UNKNOWN_PLAYER;
+		int dot = action.lastIndexOf('.');
+		return (dot > 0) ? action.substring(0, dot) : action;
+	}
+	
+	// merge this broadcast into the pending state for the current burst. called holding coalesce_lock
+	private static void offer(Intent intent) {
 		boolean playing = intent.getBooleanExtra(PLAYING, false);
-		if (playing) {
-			Track t = new Track();
-			t.artist = intent.getStringExtra(ARTIST);
-			t.title = intent.getStringExtra(TRACK);
-			t.album = intent.getStringExtra(ALBUM);
-			t.id = intent.getLongExtra(ID, 0);
-			NowPlayingPlugin.set_track_details(t, context);
+		if (!playing) {
+			// position masks should stop moving straight away. it also goes through the burst (below), so that
+			// a playing broadcast received just before it can't restart the clock when the burst is applied
+			PlaybackClock.set_paused(player_of(intent), read_long(intent, POSITION), SystemClock.elapsedRealtime());
+		}
+		events_received++;
+		
+		Track t = read_track(intent);
+		if (!playing) {
+			// only ever a state change: a stopped player's metadata isn't shown (as before)
+			t.artist = null;
+			t.title = null;
+			t.album = null;
+			t.id = 0;
+		}
+		long now = SystemClock.uptimeMillis();
+		if (pending_tracks.isEmpty()) {
+			burst_start_time = now;
+		}
+		// re-added, so the player which sent the latest broadcast is last
+		Track pending = pending_tracks.remove(t.player);
+		if ( (pending == null) || !same_track(pending, t) ) {
+			// a different track replaces the pending one outright: nothing of the old track carries over
+			pending = t;
+		} else {
+			// later broadcasts win, but one without metadata doesn't wipe out the previous one's
+			if (t.artist != null) pending.artist = t.artist;
+			if (t.title != null) pending.title = t.title;
+			if (t.album != null) pending.album = t.album;
+			if (t.id != 0) pending.id = t.id;
+			if (t.position != PlaybackClock.UNKNOWN) {
+				pending.position = t.position;
+				pending.position_time = t.position_time;
+			}
+			if (t.duration != PlaybackClock.UNKNOWN) pending.duration = t.duration;
+			pending.playing = t.playing;
+		}
+		pending_tracks.put(t.player, pending);
+		last_event_time = now;
+	}
+	
+	// a broadcast with no metadata at all is a state change for whatever track the player was on
+	private static boolean same_track(Track pending, Track t) {
+		if (!has_metadata(t)) return true;
+		return equal(pending.artist, t.artist) && equal(pending.title, t.title);
+	}
+	
+	private static boolean has_metadata(Track t) {
+		return (t.artist != null) || (t.title != null) || (t.album != null);
+	}
+	
+	private static boolean equal(String a, String b) {
+		return (a == null) ? (b == null) : a.equals(b);
+	}
+	
+	// uptime at which the current burst is applied. called holding coalesce_lock
+	private static long due_time() {
+		return Math.min(last_event_time + settle_ms, burst_start_time + MAX_SETTLE_MS);
+	}
+	
+	// the merged state for the burst, or null if there is none. called holding coalesce_lock
+	private static ArrayList<Track> take_pending() {
+		if (pending_tracks.isEmpty()) return null;
+		ArrayList<Track> tracks = new ArrayList<Track>(pending_tracks.values());
+		pending_tracks.clear();
+		events_applied += tracks.size();
+		if (BuildConfig.DEBUG) Log.i(NowPlayingPlugin.LOG_TAG, "coalesced: received = " + events_received + " applied = " + events_applied);
+		return tracks;
+	}
+	
+	// runs on the pool. the last one applied becomes the active player
+	private static void apply(ArrayList<Track> tracks, Context context) {
+		// a player which only stopped doesn't become the active one
+		for (Track track : tracks) {
+			if ( !track.playing && !has_metadata(track) ) {
+				PlaybackClock.set_paused(track.player, track.position, track.position_time);
+			} else {
+				NowPlayingPlugin.set_track_details(track, context);
+			}
+		}
+	}
+	
+	/**
+	 * @param ms How long to wait for a burst of player broadcasts to finish before applying it
+	 */
+	public static void set_settle_ms(long ms) {
+		synchronized (coalesce_lock) {
+			settle_ms = ms;
+		}
+	}
+	
+	/**
+	 * @return Number of player broadcasts received
+	 */
+	public static int get_events_received() {
+		synchronized (coalesce_lock) {
+			return events_received;
+		}
+	}
+	
+	/**
+	 * @return Number of coalesced states actually applied
+	 */
+	public static int get_events_applied() {
+		synchronized (coalesce_lock) {
+			return events_applied;
 		}
 	}
 	
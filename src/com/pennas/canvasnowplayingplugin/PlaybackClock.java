@@ -0,0 +1,239 @@
+package com.pennas.canvasnowplayingplugin;
+
+import java.util.HashMap;
+import java.util.Iterator;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.SystemClock;
+
+import com.pennas.pebblecanvas.plugin.PluginWorkQueue;
+
+/**
+ * Playback position of the active player, extrapolated from the last reported position with the monotonic clock.
+ * 
+ * Position masks register the resolution they display at (e.g. seconds, minutes, one progress bar step).
+ * While playing, a single timer wakes at the next time any of them would show something different, and
+ * notifies Canvas. Nothing is scheduled while paused, or once no position mask has been asked for in a while
+ * (time spent paused doesn't count towards that). Pausing and resuming notify Canvas too
+ */
+final class PlaybackClock {
+	static final long UNKNOWN = -1;
+	
+	static final int KIND_ELAPSED = 0;
+	static final int KIND_REMAINING = 1;
+	static final int KIND_PROGRESS = 2;
+	
+	// drop a mask's interest if canvas hasn't asked for it for this many of its own periods
+	private static final int INTEREST_PERIODS = 3;
+	private static final long MIN_INTEREST_MS = 10 * 1000;
+	// wake just after the displayed value changes, not just before
+	private static final long TICK_MARGIN_MS = 20;
+	
+	private static final class Interest {
+		final int kind;
+		final long resolution_ms;
+		final int steps;
+		long last_seen;
+		
+		Interest(int kind, long resolution_ms, int steps) {
+			this.kind = kind;
+			this.resolution_ms = resolution_ms;
+			this.steps = steps;
+		}
+		
+		// elapsed time at which this mask next shows something different
+		long next_change(long elapsed, long duration) {
+			if (kind == KIND_PROGRESS) {
+				long done = elapsed * steps / duration;
+				return ((done + 1) * duration + steps - 1) / steps;
+			}
+			// remaining changes when (duration - elapsed) crosses a multiple of the resolution
+			long offset = (kind == KIND_REMAINING) ? (duration % resolution_ms) : 0;
+			long periods = (elapsed - offset) / resolution_ms;
+			if (elapsed < offset) periods = -1;
+			return (periods + 1) * resolution_ms + offset;
+		}
+	}
+	
+	private static final Object lock = new Object();
+	private static String player;
+	private static boolean playing = false;
+	// position at anchor_time (elapsedRealtime)
+	private static long anchor_position = 0;
+	private static long anchor_time = 0;
+	private static long duration = UNKNOWN;
+	// elapsedRealtime when last paused
+	private static long paused_at = 0;
+	private static final HashMap<String, Interest> interests = new HashMap<String, Interest>();
+	
+	private static Context app_context;
+	private static int ticks = 0;
+	
+	private static final Runnable tick = new Runnable() {
+		@Override
+		public void run() {
+			Context context;
+			synchronized (lock) {
+				ticks++;
+				context = app_context;
+			}
+			NowPlayingPlugin.notify_position_changed(context);
+			schedule();
+		}
+	};
+	
+	private PlaybackClock() { }
+	
+	/**
+	 * A player's state has been applied: it becomes the player the clock runs for
+	 * 
+	 * @param new_track true if this is a different track to the one the clock was running for
+	 * @param is_playing false if the player reported it has stopped
+	 * @param position Reported position, or UNKNOWN
+	 * @param position_time elapsedRealtime when the position was reported
+	 * @param track_duration Reported duration, or UNKNOWN (or 0, which some players send)
+	 */
+	static void update(Context context, String from_player, boolean new_track, boolean is_playing, long position, long position_time, long track_duration) {
+		boolean notify;
+		synchronized (lock) {
+			app_context = context.getApplicationContext();
+			long now = SystemClock.elapsedRealtime();
+			boolean same_player = (player != null) && player.equals(from_player);
+			if (position != UNKNOWN) {
+				anchor_position = position;
+				anchor_time = position_time;
+			} else if (new_track || !same_player) {
+				// assume the track has just started
+				anchor_position = 0;
+				anchor_time = now;
+			} else if (playing != is_playing) {
+				// paused or resumed where it was
+				anchor_position = elapsed_locked(now);
+				anchor_time = now;
+			}
+			if (track_duration > 0) {
+				duration = track_duration;
+			} else if (new_track || !same_player) {
+				duration = UNKNOWN;
+			}
+			player = from_player;
+			notify = set_playing_locked(is_playing, now);
+		}
+		schedule();
+		if (notify) {
+			NowPlayingPlugin.notify_position_changed(context.getApplicationContext());
+		}
+	}
+	
+	/**
+	 * A player reported it has stopped, applied as soon as it is received so position masks stop moving.
+	 * Ignored if it isn't the player the clock is running for
+	 */
+	static void set_paused(String from_player, long position, long position_time) {
+		boolean notify;
+		Context context;
+		synchronized (lock) {
+			if ( (player == null) || !player.equals(from_player) || !playing ) return;
+			if (position != UNKNOWN) {
+				anchor_position = position;
+			} else {
+				anchor_position = elapsed_locked(position_time);
+			}
+			anchor_time = position_time;
+			notify = set_playing_locked(false, position_time);
+			context = app_context;
+		}
+		schedule();
+		if (notify) {
+			NowPlayingPlugin.notify_position_changed(context);
+		}
+	}
+	
+	// returns true if position masks should be refreshed: the clock started or stopped while some are shown.
+	// (no notify means no request, and hosts may not ask again until something else changes)
+	private static boolean set_playing_locked(boolean is_playing, long now) {
+		if (playing == is_playing) return false;
+		playing = is_playing;
+		if (is_playing) {
+			// masks weren't expected to be asked for while nothing moved
+			long paused_for = Math.max(0, now - paused_at);
+			for (Interest interest : interests.values()) {
+				interest.last_seen = Math.min(now, interest.last_seen + paused_for);
+			}
+		} else {
+			paused_at = now;
+		}
+		return !interests.isEmpty();
+	}
+	
+	/**
+	 * Current position, registering that a mask displays it at this resolution
+	 * 
+	 * @param key Identifies the mask and its params
+	 * @param steps Progress bar width (KIND_PROGRESS only)
+	 * 
+	 * @return { elapsed, duration }, or null if nothing is known
+	 */
+	static long[] get_position(String key, int kind, long resolution_ms, int steps) {
+		boolean schedule = false;
+		long[] result;
+		synchronized (lock) {
+			if (player == null) return null;
+			Interest interest = interests.get(key);
+			if (interest == null) {
+				interest = new Interest(kind, resolution_ms, steps);
+				interests.put(key, interest);
+				schedule = playing;
+			}
+			interest.last_seen = SystemClock.elapsedRealtime();
+			result = new long[] { elapsed_locked(interest.last_seen), duration };
+		}
+		if (schedule) {
+			schedule();
+		}
+		return result;
+	}
+	
+	private static long elapsed_locked(long now) {
+		long elapsed = anchor_position;
+		if (playing) {
+			elapsed += now - anchor_time;
+		}
+		if ( (duration != UNKNOWN) && (elapsed > duration) ) elapsed = duration;
+		return Math.max(0, elapsed);
+	}
+	
+	// (re)arm the timer for the next visible change, or stop it
+	private static void schedule() {
+		synchronized (lock) {
+			Handler h = PluginWorkQueue.get().get_handler();
+			h.removeCallbacks(tick);
+			if (!playing) return;
+			
+			long now = SystemClock.elapsedRealtime();
+			long elapsed = elapsed_locked(now);
+			long next = Long.MAX_VALUE;
+			Iterator<Interest> it = interests.values().iterator();
+			while (it.hasNext()) {
+				Interest interest = it.next();
+				long period = (interest.kind == KIND_PROGRESS) ? ((duration == UNKNOWN) ? 0 : duration / interest.steps) : interest.resolution_ms;
+				if (now - interest.last_seen > Math.max(MIN_INTEREST_MS, period * INTEREST_PERIODS)) {
+					it.remove();
+					continue;
+				}
+				if ( (duration == UNKNOWN) && (interest.kind != KIND_ELAPSED) ) continue;
+				next = Math.min(next, interest.next_change(elapsed, duration));
+			}
+			if (next == Long.MAX_VALUE) return;
+			if ( (duration != UNKNOWN) && (next > duration) ) return;
+			h.postDelayed(tick, next - elapsed + TICK_MARGIN_MS);
+		}
+	}
+	
+	static String get_stats() {
+		synchronized (lock) {
+			return "position ticks = " + ticks + " masks = " + interests.size() + " playing = " + playing;
+		}
+	}
+}
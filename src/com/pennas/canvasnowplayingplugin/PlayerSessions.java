@@ -0,0 +1,81 @@
+package com.pennas.canvasnowplayingplugin;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.pennas.canvasnowplayingplugin.NowPlayingPlugin.Snapshot;
+
+/**
+ * Last known state of each player, keyed by player (package, or broadcast action prefix if the player doesn't say).
+ * 
+ * Switching back to a player whose track hasn't changed reuses its resolved album art, rather than
+ * looking it up again. Layers can also be pinned to one player with the param "player=<key>"
+ */
+final class PlayerSessions {
+	static final String UNKNOWN_PLAYER = "";
+	// players remembered, least recently playing dropped first
+	private static final int MAX_SESSIONS = 8;
+	
+	static final class Session {
+		final String player;
+		// track, and album art once resolved for this track
+		volatile Snapshot track = Snapshot.EMPTY;
+		boolean art_resolved = false;
+		
+		private Session(String player) {
+			this.player = player;
+		}
+	}
+	
+	private static final LinkedHashMap<String, Session> sessions = new LinkedHashMap<String, Session>(MAX_SESSIONS, 0.75f, true);
+	// players which layers have asked for by name
+	private static final HashSet<String> pinned = new HashSet<String>();
+	private static int art_reused = 0;
+	
+	private PlayerSessions() { }
+	
+	/**
+	 * @return Session for this player, created if new. Marks it as the most recently playing
+	 */
+	static synchronized Session get(String player) {
+		if (player == null) player = UNKNOWN_PLAYER;
+		Session s = sessions.get(player);
+		if (s == null) {
+			s = new Session(player);
+			sessions.put(player, s);
+			if (sessions.size() > MAX_SESSIONS) {
+				Iterator<Map.Entry<String, Session>> it = sessions.entrySet().iterator();
+				it.next();
+				it.remove();
+			}
+		}
+		return s;
+	}
+	
+	/**
+	 * Track for a pinned layer. Doesn't affect which session is most recent
+	 * 
+	 * @return Session's track, or an empty track if nothing has been heard from this player
+	 */
+	static synchronized Snapshot get_pinned_track(String player) {
+		pinned.add(player);
+		for (Session s : sessions.values()) {
+			if (s.player.equals(player)) return s.track;
+		}
+		return Snapshot.EMPTY;
+	}
+	
+	static synchronized boolean is_pinned(String player) {
+		return pinned.contains(player);
+	}
+	
+	static synchronized void count_art_reused() {
+		art_reused++;
+	}
+	
+	static synchronized String get_stats() {
+		return "player sessions = " + sessions.size() + " pinned = " + pinned.size() + " art reused = " + art_reused;
+	}
+}
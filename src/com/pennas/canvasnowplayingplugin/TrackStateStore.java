@@ -0,0 +1,214 @@
+package com.pennas.canvasnowplayingplugin;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import android.content.Context;
+import android.net.Uri;
+import android.util.Log;
+
+import com.pennas.canvasnowplayingplugin.NowPlayingPlugin.Snapshot;
+import com.pennas.canvasnowplayingplugin.NowPlayingPlugin.Track;
+import com.pennas.pebblecanvas.plugin.PluginStats;
+import com.pennas.pebblecanvas.plugin.PluginWorkQueue;
+
+/**
+ * Persists the current track as a single record in its own small file, which is all a cold start has to read
+ * (no prefs XML to parse).
+ * 
+ * Unchanged state is never written. Changes are written on the plugin's background thread, at most
+ * MAX_WRITE_DELAY_MS after they happen, so a burst of changes costs one write
+ */
+final class TrackStateStore {
+	private static final String FILENAME = "now_playing_state";
+	private static final String CHARSET = "UTF-8";
+	// a track record is a few hundred bytes; anything much bigger isn't ours
+	private static final int MAX_RECORD_BYTES = 16 * 1024;
+	private static final long MAX_WRITE_DELAY_MS = 500;
+	// field separator, and markers for null / present fields
+	private static final char SEP = '\u001f';
+	private static final char NULL_FIELD = '0';
+	private static final char STRING_FIELD = '1';
+	private static final int NUM_FIELDS = 4;
+	
+	private static final Object lock = new Object();
+	private static File file;
+	private static String last_written;
+	private static String pending;
+	private static int writes = 0;
+	private static int skipped = 0;
+	
+	private TrackStateStore() { }
+	
+	private static final Runnable write = new Runnable() {
+		@Override
+		public void run() {
+			String record;
+			synchronized (lock) {
+				record = pending;
+				pending = null;
+				if (record == null) return;
+			}
+			long start = PluginStats.start();
+			boolean ok = write_file(record);
+			PluginStats.end(PluginStats.STAGE_PERSIST, start);
+			if (!ok) return;
+			synchronized (lock) {
+				last_written = record;
+				writes++;
+			}
+		}
+	};
+	
+	/**
+	 * Schedule a write of this track, unless it is what is already stored
+	 */
+	static void save(Context context, Snapshot track) {
+		String record = encode(track);
+		synchronized (lock) {
+			String current = (pending != null) ? pending : last_written;
+			if (record.equals(current)) {
+				skipped++;
+				return;
+			}
+			boolean scheduled = (pending != null);
+			pending = record;
+			if (!scheduled) {
+				get_file(context);
+				PluginWorkQueue.get().get_handler().postDelayed(write, MAX_WRITE_DELAY_MS);
+			}
+		}
+	}
+	
+	/**
+	 * @return Stored track, or null if nothing has been stored yet
+	 */
+	static Track load(Context context) {
+		String record;
+		synchronized (lock) {
+			if (pending != null) {
+				record = pending;
+			} else {
+				record = read_file(get_file(context));
+				if (record != null) {
+					last_written = record;
+				}
+			}
+			if (record == null) return null;
+		}
+		return decode(record);
+	}
+	
+	private static File get_file(Context context) {
+		if (file == null) {
+			file = new File(context.getApplicationContext().getFilesDir(), FILENAME);
+		}
+		return file;
+	}
+	
+	private static String read_file(File f) {
+		if (!f.exists()) return null;
+		FileInputStream in = null;
+		try {
+			int len = (int) f.length();
+			if (len > MAX_RECORD_BYTES) return null;
+			byte[] data = new byte[len];
+			in = new FileInputStream(f);
+			int read = 0;
+			while (read < len) {
+				int n = in.read(data, read, len - read);
+				if (n < 0) break;
+				read += n;
+			}
+			return new String(data, 0, read, CHARSET);
+		} catch (IOException e) {
+			Log.i(NowPlayingPlugin.LOG_TAG, e.toString());
+			return null;
+		} finally {
+			try {
+				if (in != null) {
+					in.close();
+				}
+			} catch (IOException e) { /* */ }
+		}
+	}
+	
+	// via a temporary file, so a kill mid-write leaves the previous record intact
+	private static boolean write_file(String record) {
+		File tmp = new File(file.getPath() + ".tmp");
+		FileOutputStream out = null;
+		try {
+			out = new FileOutputStream(tmp);
+			out.write(record.getBytes(CHARSET));
+			// on disk before it replaces the old record (as AtomicFile does)
+			out.getFD().sync();
+			out.close();
+			out = null;
+			return tmp.renameTo(file);
+		} catch (IOException e) {
+			Log.i(NowPlayingPlugin.LOG_TAG, e.toString());
+			return false;
+		} finally {
+			try {
+				if (out != null) {
+					out.close();
+				}
+			} catch (IOException e) { /* */ }
+		}
+	}
+	
+	private static String encode(Snapshot track) {
+		StringBuilder sb = new StringBuilder();
+		append_field(sb, track.artist);
+		append_field(sb, track.title);
+		append_field(sb, track.album);
+		append_field(sb, (track.album_art_uri == null) ? null : track.album_art_uri.toString());
+		return sb.toString();
+	}
+	
+	private static void append_field(StringBuilder sb, String value) {
+		if (sb.length() > 0) sb.append(SEP);
+		if (value == null) {
+			sb.append(NULL_FIELD);
+		} else {
+			sb.append(STRING_FIELD).append(value.replace(SEP, ' '));
+		}
+	}
+	
+	private static Track decode(String record) {
+		String[] fields = new String[NUM_FIELDS];
+		int start = 0;
+		for (int i = 0; i < NUM_FIELDS; i++) {
+			int end = record.indexOf(SEP, start);
+			if (end < 0) end = record.length();
+			if ( (end > start) && (record.charAt(start) == STRING_FIELD) ) {
+				fields[i] = record.substring(start + 1, end);
+			}
+			start = end + 1;
+			if (start > record.length()) break;
+		}
+		
+		Track t = new Track();
+		t.artist = fields[0];
+		t.title = fields[1];
+		t.album = fields[2];
+		if (fields[3] != null) {
+			t.album_art_uri = Uri.parse(fields[3]);
+		}
+		return t;
+	}
+	
+	static int get_writes() {
+		synchronized (lock) {
+			return writes;
+		}
+	}
+	
+	static String get_stats() {
+		synchronized (lock) {
+			return "state writes = " + writes + " skipped = " + skipped;
+		}
+	}
+}
@@ -0,0 +1,21 @@
+package com.pennas.canvasnowplayingplugin.core;
+
+/**
+ * Decides whether an incoming track differs from the current one.
+ */
+public final class TrackDiff {
+	private TrackDiff() { }
+	
+	/**
+	 * A field only counts as changed if the new value is present: players often leave fields out of
+	 * follow-up broadcasts, and that shouldn't blank what is already shown
+	 */
+	public static boolean changed(String current, String update) {
+		if (update == null) return false;
+		return !update.equals(current);
+	}
+	
+	public static boolean changed(String artist, String title, String album, String new_artist, String new_title, String new_album) {
+		return changed(artist, new_artist) || changed(title, new_title) || changed(album, new_album);
+	}
+}
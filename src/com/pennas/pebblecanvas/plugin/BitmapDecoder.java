@@ -0,0 +1,218 @@
+package com.pennas.pebblecanvas.plugin;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.net.Uri;
+import android.os.Build;
+import android.util.Log;
+
+/**
+ * Decodes images no bigger than they need to be for the watch, with bounded memory use.
+ *
+ * Bounds are read first, so that an inSampleSize can be chosen for the target size, and pixels are decoded
+ * as RGB_565 (half the memory of ARGB_8888; the watch shows far fewer colours). Decoded bitmaps handed back
+ * through release() are reused for later decodes (inBitmap) rather than left for the GC
+ */
+public final class BitmapDecoder {
+	private static final String LOG_TAG = "CANV_PLUG";
+	private static final Bitmap.Config CONFIG = Bitmap.Config.RGB_565;
+	private static final int BYTES_PER_PIXEL = 2;
+	// hard cap on the pixels decoded at once, whatever the target size
+	private static final int MAX_DECODE_BYTES = 1024 * 1024;
+	private static final int POOL_SIZE = 2;
+	// inBitmap with any size/sample is KitKat (19) onwards; before that, only an exact size match at sample size 1
+	private static final int SDK_KITKAT = 19;
+
+	private static final ArrayList<Bitmap> pool = new ArrayList<Bitmap>(POOL_SIZE);
+	private static int decodes = 0;
+	private static int reused = 0;
+	private static int peak_bytes = 0;
+
+	private BitmapDecoder() { }
+
+	/**
+	 * @param uri Image to decode (content:// or file://)
+	 * @param target_width Width the image will be shown at
+	 * @param target_height Height the image will be shown at
+	 *
+	 * @return Bitmap at least target size (unless the image is smaller, or that would exceed the memory cap), or null
+	 */
+	public static Bitmap decode(final Context context, final Uri uri, int target_width, int target_height) {
+		return decode(new Source() {
+			@Override
+			public InputStream open() throws IOException {
+				return context.getContentResolver().openInputStream(uri);
+			}
+		}, target_width, target_height);
+	}
+
+	/**
+	 * @param data Encoded image (e.g. embedded album art)
+	 */
+	public static Bitmap decode(final byte[] data, int target_width, int target_height) {
+		return decode(new Source() {
+			@Override
+			public InputStream open() throws IOException {
+				return new ByteArrayInputStream(data);
+			}
+		}, target_width, target_height);
+	}
+
+	/**
+	 * Hand back a bitmap from decode() once it has been encoded, for reuse. The caller must not use it afterwards
+	 */
+	public static void release(Bitmap bitmap) {
+		if ( (bitmap == null) || bitmap.isRecycled() ) return;
+		synchronized (pool) {
+			if ( bitmap.isMutable() && (bitmap.getConfig() == CONFIG) && (pool.size() < POOL_SIZE) && !pool.contains(bitmap) ) {
+				pool.add(bitmap);
+				return;
+			}
+		}
+		bitmap.recycle();
+	}
+
+	private interface Source {
+		InputStream open() throws IOException;
+	}
+
+	private static Bitmap decode(Source source, int target_width, int target_height) {
+		BitmapFactory.Options bounds = new BitmapFactory.Options();
+		bounds.inJustDecodeBounds = true;
+		if (!read(source, bounds)) return null;
+		if ( (bounds.outWidth <= 0) || (bounds.outHeight <= 0) ) return null;
+
+		int sample = 1;
+		while ( (bounds.outWidth / (sample * 2) >= target_width) && (bounds.outHeight / (sample * 2) >= target_height) ) {
+			sample *= 2;
+		}
+		while (decoded_bytes(bounds, sample) > MAX_DECODE_BYTES) {
+			sample *= 2;
+		}
+		int bytes = decoded_bytes(bounds, sample);
+
+		BitmapFactory.Options opts = new BitmapFactory.Options();
+		opts.inSampleSize = sample;
+		opts.inPreferredConfig = CONFIG;
+		opts.inDither = true;
+		Bitmap taken = null;
+		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB) {
+			opts.inMutable = true;
+			taken = take_reusable(bounds, sample, bytes);
+			opts.inBitmap = taken;
+		}
+
+		Bitmap bitmap;
+		try {
+			bitmap = read_bitmap(source, opts);
+		} catch (IllegalArgumentException e) {
+			if (taken == null) return null;
+			// pooled bitmap turned out to be unsuitable: decode into a new one
+			opts.inBitmap = null;
+			try {
+				bitmap = read_bitmap(source, opts);
+			} catch (IllegalArgumentException e2) {
+				release(taken);
+				return null;
+			}
+		}
+		// a pooled bitmap which didn't become the result goes back for the next decode
+		if ( (taken != null) && (bitmap != taken) ) {
+			release(taken);
+		}
+
+		synchronized (pool) {
+			decodes++;
+			if ( (bitmap != null) && (bitmap == taken) ) reused++;
+			if (bytes > peak_bytes) peak_bytes = bytes;
+		}
+		return bitmap;
+	}
+
+	private static int decoded_bytes(BitmapFactory.Options bounds, int sample) {
+		int w = (bounds.outWidth + sample - 1) / sample;
+		int h = (bounds.outHeight + sample - 1) / sample;
+		return w * h * BYTES_PER_PIXEL;
+	}
+
+	private static Bitmap take_reusable(BitmapFactory.Options bounds, int sample, int bytes) {
+		synchronized (pool) {
+			for (int i = 0; i < pool.size(); i++) {
+				Bitmap b = pool.get(i);
+				boolean fits;
+				if (Build.VERSION.SDK_INT >= SDK_KITKAT) {
+					fits = (b.getRowBytes() * b.getHeight() >= bytes);
+				} else {
+					fits = (sample == 1) && (b.getWidth() == bounds.outWidth) && (b.getHeight() == bounds.outHeight);
+				}
+				if (fits) {
+					return pool.remove(i);
+				}
+			}
+		}
+		return null;
+	}
+
+	private static boolean read(Source source, BitmapFactory.Options opts) {
+		InputStream in = null;
+		try {
+			in = source.open();
+			if (in == null) return false;
+			BitmapFactory.decodeStream(in, null, opts);
+			return true;
+		} catch (FileNotFoundException e) {
+			return false;
+		} catch (IOException e) {
+			Log.i(LOG_TAG, e.toString());
+			return false;
+		} catch (IllegalArgumentException e) {
+			return false;
+		} catch (IllegalStateException e) {
+			return false;
+		} finally {
+			if (in != null) {
+				try {
+					in.close();
+				} catch (IOException e) { /* */ }
+			}
+		}
+	}
+
+	private static Bitmap read_bitmap(Source source, BitmapFactory.Options opts) {
+		InputStream in = null;
+		try {
+			in = source.open();
+			if (in == null) return null;
+			return BitmapFactory.decodeStream(in, null, opts);
+		} catch (FileNotFoundException e) {
+			return null;
+		} catch (IOException e) {
+			Log.i(LOG_TAG, e.toString());
+			return null;
+		} catch (IllegalStateException e) {
+			return null;
+		} catch (OutOfMemoryError e) {
+			Log.i(LOG_TAG, "decode: out of memory");
+			return null;
+		} finally {
+			if (in != null) {
+				try {
+					in.close();
+				} catch (IOException e) { /* */ }
+			}
+		}
+	}
+
+	public static String get_stats() {
+		synchronized (pool) {
+			return "bitmap decodes = " + decodes + " reused = " + reused + " pooled = " + pool.size() + " peak bytes = " + peak_bytes;
+		}
+	}
+}
@@ -0,0 +1,16 @@
+package com.pennas.pebblecanvas.plugin;
+
+import android.content.Intent;
+
+/**
+ * Sees every broadcast the SDK sends to Canvas (definitions, updates, notifications), just before it is sent.
+ * For debugging and load testing; see PebbleCanvasPlugin.set_broadcast_observer
+ */
+public interface BroadcastObserver {
+	/**
+	 * Called on the sending thread, so must return quickly
+	 * 
+	 * @param intent Intent about to be broadcast. Must not be modified
+	 */
+	void on_broadcast(Intent intent);
+}
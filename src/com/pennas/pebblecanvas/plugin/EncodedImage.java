@@ -0,0 +1,16 @@
+package com.pennas.pebblecanvas.plugin;
+
+import com.pennas.pebblecanvas.plugin.core.CacheFiles;
+
+/**
+ * An image which has been encoded ready to send to Canvas, along with a hash of its content
+ */
+public final class EncodedImage {
+	public final byte[] data;
+	public final String hash;
+
+	public EncodedImage(byte[] data) {
+		this.data = data;
+		this.hash = CacheFiles.sha1_hex(data);
+	}
+}
@@ -0,0 +1,106 @@
+package com.pennas.pebblecanvas.plugin;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.concurrent.CountDownLatch;
+
+import android.util.Log;
+
+/**
+ * Tracks images being rendered ahead of Canvas asking for them, so that a request arriving
+ * mid-render waits for that render rather than starting its own
+ */
+final class ImagePrefetcher {
+	private static final String LOG_TAG = "CANV_PLUG";
+	
+	static final class Task {
+		private final CountDownLatch done = new CountDownLatch(1);
+		private EncodedImage result;
+		private boolean running = false;
+		
+		void finish(EncodedImage image) {
+			result = image;
+			done.countDown();
+		}
+		
+		EncodedImage await() {
+			try {
+				done.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return null;
+			}
+			return result;
+		}
+	}
+	
+	private static final HashMap<String, Task> in_flight = new HashMap<String, Task>();
+	// rendered by a prefetch but not yet requested by canvas
+	private static final HashSet<String> unclaimed = new HashSet<String>();
+	
+	private static int started = 0;
+	private static int hits = 0;
+	private static int waits = 0;
+	
+	private ImagePrefetcher() { }
+	
+	/**
+	 * @return New task if a prefetch should be started for this key, or null if one is already running
+	 */
+	static synchronized Task start(String key) {
+		if (in_flight.containsKey(key)) return null;
+		Task task = new Task();
+		in_flight.put(key, task);
+		started++;
+		return task;
+	}
+	
+	static void finish(String key, Task task, EncodedImage image) {
+		synchronized (ImagePrefetcher.class) {
+			in_flight.remove(key);
+			if (image != null) {
+				unclaimed.add(key);
+			}
+		}
+		task.finish(image);
+	}
+	
+	/**
+	 * Called when the prefetch work actually starts. Until then requests don't wait for it: the prefetch may be
+	 * queued behind the very request which would be waiting
+	 */
+	static synchronized void mark_running(Task task) {
+		task.running = true;
+	}
+	
+	/**
+	 * Request for key found the image in the cache: count it if a prefetch put it there
+	 */
+	static synchronized void claim(String key) {
+		if (unclaimed.remove(key)) {
+			hits++;
+		}
+	}
+	
+	/**
+	 * Request for key missed the cache: wait for a prefetch of it, if one is running
+	 * 
+	 * @return Prefetched image, or null if none was running (or it failed)
+	 */
+	static EncodedImage await(String key) {
+		Task task;
+		synchronized (ImagePrefetcher.class) {
+			task = in_flight.get(key);
+			if ( (task == null) || !task.running ) return null;
+			waits++;
+		}
+		if (PebbleCanvasPlugin.debug_log) Log.i(LOG_TAG, "waiting for prefetch: " + key);
+		EncodedImage image = task.await();
+		claim(key);
+		return image;
+	}
+	
+	static synchronized String get_stats() {
+		return "prefetch started = " + started + " hits = " + hits + " waits = " + waits;
+	}
+}
@@ -0,0 +1,78 @@
+package com.pennas.pebblecanvas.plugin;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+
+import android.content.ContentProvider;
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+
+/**
+ * Serves rendered images to Canvas from app-private storage, so that images don't need to go via
+ * external storage (and the plugin doesn't need the storage permission).
+ *
+ * To use, declare in the plugin's manifest (not exported; Canvas gets a read grant per image):
+ *   &lt;provider android:name="com.pennas.pebblecanvas.plugin.ImageProvider"
+ *       android:authorities="YOUR.PACKAGE.canvasimages"
+ *       android:exported="false"
+ *       android:grantUriPermissions="true" /&gt;
+ * and return the same authority from PebbleCanvasPlugin.get_image_provider_authority()
+ */
+public class ImageProvider extends ContentProvider {
+	private static final String DIR_NAME = "canvas_images";
+	private static final String MIME_TYPE = "application/octet-stream";
+
+	static File get_dir(Context context) {
+		return context.getDir(DIR_NAME, Context.MODE_PRIVATE);
+	}
+
+	static Uri get_uri(String authority, String name) {
+		return Uri.parse("content://" + authority + "/" + name);
+	}
+
+	@Override
+	public boolean onCreate() {
+		return true;
+	}
+
+	@Override
+	public ParcelFileDescriptor openFile(Uri uri, String mode) throws FileNotFoundException {
+		if (!"r".equals(mode)) {
+			throw new FileNotFoundException("read only: " + uri);
+		}
+		String name = uri.getLastPathSegment();
+		if ( (name == null) || !ImageStore.is_image_name(name) ) {
+			throw new FileNotFoundException(uri.toString());
+		}
+		return ParcelFileDescriptor.open(new File(get_dir(getContext()), name), ParcelFileDescriptor.MODE_READ_ONLY);
+	}
+
+	@Override
+	public String getType(Uri uri) {
+		return MIME_TYPE;
+	}
+
+	// files only, read only: nothing to query, and nothing can be changed
+	@Override
+	public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder) {
+		return null;
+	}
+
+	@Override
+	public Uri insert(Uri uri, ContentValues values) {
+		return null;
+	}
+
+	@Override
+	public int delete(Uri uri, String selection, String[] selectionArgs) {
+		return 0;
+	}
+
+	@Override
+	public int update(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
+		return 0;
+	}
+}
@@ -0,0 +1,129 @@
+package com.pennas.pebblecanvas.plugin;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import android.util.Log;
+
+import com.pennas.pebblecanvas.plugin.core.CacheFiles;
+
+/**
+ * Content-addressed store for images handed to Canvas by file path.
+ *
+ * Files are named by the hash of their content, so an unchanged image reuses the existing file
+ * instead of being rewritten. Files are written to a temporary name and renamed, so Canvas never
+ * sees a partial file, and a file is only deleted once it hasn't been sent for a while.
+ * Safe to call from multiple threads
+ */
+final class ImageStore {
+	private static final String LOG_TAG = "CANV_PLUG";
+	private static final String FILENAME_PREFIX = "img_";
+	private static final String LEGACY_FILENAME_PREFIX = "img_tmp_";
+	private static final String TMP_SUFFIX = ".tmp";
+	private static final int MAX_FILES = 5;
+	// canvas may still be reading a file for a short time after it was sent
+	private static final long KEEP_ALIVE_MS = 30 * 1000;
+
+	/**
+	 * Told when a file is deleted, so anything handed out for it can be withdrawn
+	 */
+	interface Listener {
+		void on_deleted(String name);
+	}
+
+	private final File dir;
+	private final Listener listener;
+	// file name -> time last sent. access ordered, so iteration starts at the least recently sent
+	private final LinkedHashMap<String, Long> files = new LinkedHashMap<String, Long>(16, 0.75f, true);
+
+	private int writes = 0;
+	private int reuses = 0;
+
+	ImageStore(File dir, Listener listener) {
+		this.dir = dir;
+		this.listener = listener;
+		adopt_existing_files();
+	}
+
+	/**
+	 * @return File containing exactly this image, written only if not already present
+	 */
+	synchronized File store(EncodedImage image) throws IOException {
+		String name = FILENAME_PREFIX + image.hash;
+		File f = new File(dir, name);
+		if (files.containsKey(name) && f.exists()) {
+			reuses++;
+		} else {
+			long start = PluginStats.start();
+			File tmp = new File(dir, name + TMP_SUFFIX);
+			FileOutputStream out = new FileOutputStream(tmp);
+			try {
+				out.write(image.data);
+				out.flush();
+			} finally {
+				out.close();
+			}
+			if (!tmp.renameTo(f)) {
+				tmp.delete();
+				throw new IOException("rename failed: " + f);
+			}
+			writes++;
+			PluginStats.end(PluginStats.STAGE_FILE_WRITE, start);
+		}
+		files.put(name, System.currentTimeMillis());
+		trim();
+		return f;
+	}
+
+	// delete the least recently sent files beyond MAX_FILES, unless canvas might still be reading them
+	private void trim() {
+		long now = System.currentTimeMillis();
+		int excess = files.size() - MAX_FILES;
+		Iterator<Map.Entry<String, Long>> it = files.entrySet().iterator();
+		while ( (excess > 0) && it.hasNext() ) {
+			Map.Entry<String, Long> eldest = it.next();
+			if (now - eldest.getValue() < KEEP_ALIVE_MS) break;
+			new File(dir, eldest.getKey()).delete();
+			it.remove();
+			if (listener != null) {
+				listener.on_deleted(eldest.getKey());
+			}
+			excess--;
+		}
+	}
+
+	// files from a previous process are still valid content; old fixed-name files aren't
+	private void adopt_existing_files() {
+		File[] existing = dir.listFiles();
+		if (existing == null) return;
+		CacheFiles.sort_oldest_first(existing);
+		for (File f : existing) {
+			String name = f.getName();
+			if (name.startsWith(LEGACY_FILENAME_PREFIX) || name.endsWith(TMP_SUFFIX)) {
+				f.delete();
+			} else if (name.startsWith(FILENAME_PREFIX)) {
+				files.put(name, f.lastModified());
+			}
+		}
+		trim();
+		Log.i(LOG_TAG, "image store: adopted " + files.size() + " files");
+	}
+
+	// only names this store could have written: no paths, no temporary files
+	static boolean is_image_name(String name) {
+		return name.startsWith(FILENAME_PREFIX) && !name.startsWith(LEGACY_FILENAME_PREFIX)
+				&& !name.endsWith(TMP_SUFFIX) && (name.indexOf('/') < 0);
+	}
+
+	synchronized int get_writes() {
+		return writes;
+	}
+
+	synchronized int get_reuses() {
+		return reuses;
+	}
+}
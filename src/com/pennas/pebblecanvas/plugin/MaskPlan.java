@@ -0,0 +1,103 @@
+package com.pennas.pebblecanvas.plugin;
+
+import java.util.ArrayList;
+
+import android.util.SparseArray;
+
+import com.pennas.pebblecanvas.plugin.core.FormatMaskParser;
+import com.pennas.pebblecanvas.plugin.core.MaskListCache;
+import com.pennas.pebblecanvas.plugin.core.TextPolicy;
+
+/**
+ * A list of format masks requested by Canvas, parsed once into base masks and user params (%X#param#).
+ * 
+ * Canvas sends the same mask lists over and over, so plans are cached per definition and reused
+ */
+final class MaskPlan {
+	// distinct mask lists remembered per definition (one per layer using the plugin, typically)
+	private static final int MAX_PLANS_PER_DEF = 16;
+	
+	private static final SparseArray<MaskListCache<MaskPlan>> plans = new SparseArray<MaskListCache<MaskPlan>>();
+	private static int hits = 0;
+	private static int misses = 0;
+	
+	final String[] masks;
+	final String[] params;
+	// index into the definition's resolver slots, or NO_SLOT
+	final int[] slots;
+	// length/charset limits from each mask's param, or null
+	final TextPolicy[] policies;
+	
+	// values last sent for this mask list, and the definition's value version at the time
+	private String[] last_values;
+	private int last_version;
+	
+	private MaskPlan(PebbleCanvasPlugin.TextPluginDefinition def, ArrayList<String> format_masks) {
+		int n = format_masks.size();
+		masks = new String[n];
+		params = new String[n];
+		slots = new int[n];
+		policies = new TextPolicy[n];
+		FormatMaskParser.parse(format_masks, masks, params);
+		for (int i = 0; i < n; i++) {
+			slots[i] = def.slot_of(masks[i]);
+			policies[i] = TextPolicy.parse(params[i]);
+		}
+	}
+	
+	/**
+	 * @return Cached plan for this definition and mask list, parsing it if not seen before
+	 */
+	static synchronized MaskPlan get(PebbleCanvasPlugin.TextPluginDefinition def, ArrayList<String> format_masks) {
+		int def_id = def.id;
+		MaskListCache<MaskPlan> def_plans = plans.get(def_id);
+		if (def_plans == null) {
+			def_plans = new MaskListCache<MaskPlan>(MAX_PLANS_PER_DEF);
+			plans.put(def_id, def_plans);
+		}
+		MaskPlan plan = def_plans.get(format_masks);
+		if (plan != null) {
+			hits++;
+			return plan;
+		}
+		
+		misses++;
+		plan = new MaskPlan(def, format_masks);
+		def_plans.put(format_masks, plan);
+		return plan;
+	}
+	
+	/**
+	 * @return true if values were sent for this mask list at this value version
+	 */
+	synchronized boolean is_current(int version) {
+		return (last_values != null) && (last_version == version);
+	}
+	
+	/**
+	 * Record values being sent
+	 * 
+	 * @return Values previously sent, or null
+	 */
+	synchronized String[] remember(String[] values, int version) {
+		String[] previous = last_values;
+		last_values = values;
+		last_version = version;
+		return previous;
+	}
+	
+	/**
+	 * Forget plans for a definition whose masks or resolvers have changed
+	 */
+	static synchronized void clear(int def_id) {
+		plans.remove(def_id);
+	}
+	
+	static synchronized int get_hits() {
+		return hits;
+	}
+	
+	static synchronized int get_misses() {
+		return misses;
+	}
+}
@@ -0,0 +1,19 @@
+package com.pennas.pebblecanvas.plugin;
+
+import android.content.Context;
+
+/**
+ * Provides the current value of one format mask of a {@link PebbleCanvasPlugin.TextPluginDefinition}.
+ * 
+ * Registered with {@link PebbleCanvasPlugin.TextPluginDefinition#add_format_mask}; the SDK resolves masks to
+ * resolvers once, so plugins don't need to compare mask strings on every request
+ */
+public interface MaskResolver {
+	/**
+	 * @param context Calling context
+	 * @param param User-entered parameter (%X#param#), or null
+	 * 
+	 * @return The current String value of the format mask
+	 */
+	String resolve(Context context, String param);
+}
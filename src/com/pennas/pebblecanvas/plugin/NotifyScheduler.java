@@ -0,0 +1,82 @@
+package com.pennas.pebblecanvas.plugin;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.SparseArray;
+
+/**
+ * Limits update notifications to Canvas to one per definition per min_interval_ms.
+ *
+ * The first notify in a quiet period is sent straight away. Further notifies within the interval are
+ * folded into a single trailing notify at the end of it, so Canvas always ends up asking for the latest
+ * state, but every change doesn't cost a round trip to the watch
+ */
+final class NotifyScheduler {
+	private static final class State {
+		long last_sent_ms = Long.MIN_VALUE / 2;
+		boolean scheduled = false;
+		Context context;
+	}
+
+	private static final SparseArray<State> states = new SparseArray<State>();
+	private static long min_interval_ms = 500;
+	private static int sent = 0;
+	private static int suppressed = 0;
+
+	private NotifyScheduler() { }
+
+	static void request(final int def_id, Context context) {
+		long now = SystemClock.uptimeMillis();
+		synchronized (states) {
+			State s = states.get(def_id);
+			if (s == null) {
+				s = new State();
+				states.put(def_id, s);
+			}
+			s.context = context.getApplicationContext();
+			if (s.scheduled) {
+				// the trailing notify will cover this one
+				suppressed++;
+				return;
+			}
+			long due = s.last_sent_ms + min_interval_ms;
+			if (now < due) {
+				s.scheduled = true;
+				PluginWorkQueue.get().get_handler().postAtTime(new Runnable() {
+					@Override
+					public void run() {
+						send_trailing(def_id);
+					}
+				}, due);
+				return;
+			}
+			s.last_sent_ms = now;
+			sent++;
+		}
+		PebbleCanvasPlugin.send_notify(def_id, context);
+	}
+
+	private static void send_trailing(int def_id) {
+		Context context;
+		synchronized (states) {
+			State s = states.get(def_id);
+			s.scheduled = false;
+			s.last_sent_ms = SystemClock.uptimeMillis();
+			context = s.context;
+			sent++;
+		}
+		PebbleCanvasPlugin.send_notify(def_id, context);
+	}
+
+	static void set_min_interval(long ms) {
+		synchronized (states) {
+			min_interval_ms = ms;
+		}
+	}
+
+	static String get_stats() {
+		synchronized (states) {
+			return "notifies sent = " + sent + " suppressed = " + suppressed + " (min interval " + min_interval_ms + "ms)";
+		}
+	}
+}
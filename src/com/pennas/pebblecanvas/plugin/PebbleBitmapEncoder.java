@@ -0,0 +1,47 @@
+package com.pennas.pebblecanvas.plugin;
+
+import android.graphics.Bitmap;
+
+import com.pennas.pebblecanvas.plugin.core.GBitmapEncoder;
+
+/**
+ * Encodes bitmaps directly into the Pebble's native GBitmap layout (1-bit or 64 colour),
+ * so that neither the plugin nor Canvas has to go via PNG
+ */
+final class PebbleBitmapEncoder {
+	private PebbleBitmapEncoder() { }
+
+	/**
+	 * Resize (keeping aspect ratio) to fit within max_width x max_height, then quantize, dither and pack
+	 *
+	 * @param src Source bitmap (not recycled)
+	 * @param format One of PebbleCanvasPlugin.IMAGE_FORMAT_PEBBLE_*
+	 * @param max_width Maximum width of encoded image
+	 * @param max_height Maximum height of encoded image
+	 *
+	 * @return Encoded GBitmap, including header
+	 */
+	static byte[] encode(Bitmap src, int format, int max_width, int max_height) {
+		int src_w = src.getWidth();
+		int src_h = src.getHeight();
+		int[] size = GBitmapEncoder.fit(src_w, src_h, max_width, max_height);
+		int w = size[0];
+		int h = size[1];
+
+		Bitmap scaled = src;
+		if ( (w != src_w) || (h != src_h) ) {
+			scaled = Bitmap.createScaledBitmap(src, w, h, true);
+		}
+		int[] argb = new int[w * h];
+		scaled.getPixels(argb, 0, w, 0, 0, w, h);
+		if (scaled != src) {
+			scaled.recycle();
+		}
+
+		if (format == PebbleCanvasPlugin.IMAGE_FORMAT_PEBBLE_1BIT) {
+			return GBitmapEncoder.encode_1bit(argb, w, h);
+		} else {
+			return GBitmapEncoder.encode_8bit(argb, w, h);
+		}
+	}
+}
@@ -1,12 +1,11 @@
 package com.pennas.pebblecanvas.plugin;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.HashMap;
 
 import android.content.BroadcastReceiver;
 import android.content.Context;
@@ -15,10 +14,20 @@ import android.content.pm.PackageInfo;
 import android.content.pm.PackageManager;
 import android.content.pm.PackageManager.NameNotFoundException;
 import android.graphics.Bitmap;
+import android.net.Uri;
+import android.os.Bundle;
 import android.util.Log;
+import android.util.SparseArray;
+import android.util.SparseIntArray;
+
+import com.pennas.pebblecanvas.plugin.core.FormatMaskParser;
+import com.pennas.pebblecanvas.plugin.core.TextPolicy;
 
 public abstract class PebbleCanvasPlugin extends BroadcastReceiver {
 	private static final int INTERFACE_VERSION = 2;
+	// interface version 3 extension: one request/reply can carry several definitions.
+	// advertised separately so that version 2 hosts see exactly what they always have
+	private static final int BATCH_INTERFACE_VERSION = 3;
 	
 	private static final String ABS_LOG_TAG = "CANV_PLUG";
 	// canvas -> plugins
@@ -29,6 +38,10 @@ public abstract class PebbleCanvasPlugin extends BroadcastReceiver {
 	public static final String CANVAS_ACTION_UPDATE = "com.pennas.pebblecanvas.plugin.UPDATE";
 	public static final String CANVAS_ACTION_NOTIFY_UPDATE = "com.pennas.pebblecanvas.plugin.NOTIFY_UPDATE";
 	public static final String CANVAS_ACTION_SHOW_SCREEN = "com.pennas.pebblecanvas.plugin.SHOW_SCREEN";
+	// debug: write pipeline timings and counters to the log and to STATS_FILENAME in the external files dir.
+	// the receiver is exported, so this is ignored unless debug logging is on (see set_debug_logging)
+	public static final String ACTION_DUMP_STATS = "com.pennas.pebblecanvas.plugin.DUMP_STATS";
+	private static final String STATS_FILENAME = "plugin_stats.txt";
 	
 	// definition fields
 	public static final String CANVAS_DEFINITION_ID = "ID";
@@ -42,6 +55,8 @@ public abstract class PebbleCanvasPlugin extends BroadcastReceiver {
 	public static final String CANVAS_DEFINITION_FORMAT_EXAMPLES = "FORMAT_EXAMPLES";
 	public static final String CANVAS_DEFINITION_DEFAULT_FORMAT_STRING = "FORMAT_DEFAULT";
 	public static final String CANVAS_DEFINITION_PARAMS_DESC = "PARAMS_DESC";
+	public static final String CANVAS_DEFINITION_IMAGE_FORMAT = "IMAGE_FORMAT";
+	public static final String CANVAS_DEFINITION_BATCH_INTERFACE_VERSION = "BATCH_INTERFACE_VERSION";
 	
 	// value fields
 	public static final String CANVAS_VALUE_FORMAT_MASKS = "FORMAT_MASK";
@@ -49,49 +64,140 @@ public abstract class PebbleCanvasPlugin extends BroadcastReceiver {
 	public static final String CANVAS_VALUE_IMAGE = "IMAGE";
 	public static final String CANVAS_VALUE_SCREEN_NAME = "SCREEN_NAME";
 	public static final String CANVAS_VALUE_IMAGE_PARAMS = "IMAGE_PARAMS";
+	public static final String CANVAS_VALUE_IMAGE_FORMAT = "IMAGE_FORMAT";
+	// delta replies: host sets ACCEPT_DELTA (and FULL_RESYNC to force all values). plugin replies with
+	// DELTA set and only the masks whose values changed since the last reply for that mask list, or UNCHANGED
+	public static final String CANVAS_VALUE_ACCEPT_DELTA = "ACCEPT_DELTA";
+	public static final String CANVAS_VALUE_FULL_RESYNC = "FULL_RESYNC";
+	public static final String CANVAS_VALUE_DELTA = "DELTA";
+	public static final String CANVAS_VALUE_UNCHANGED = "UNCHANGED";
+	// list of bundles, one per definition. each has CANVAS_DEFINITION_ID plus the same fields as a single request/reply
+	public static final String CANVAS_VALUE_BATCH = "BATCH";
+	// images via content URI: host sets ACCEPT_IMAGE_URI. if the plugin has an ImageProvider, it replies with
+	// IMAGE_URI (readable by the host through a per-image grant) instead of an external storage path in IMAGE
+	public static final String CANVAS_VALUE_ACCEPT_IMAGE_URI = "ACCEPT_IMAGE_URI";
+	public static final String CANVAS_VALUE_IMAGE_URI = "IMAGE_URI";
 	
 	// plugin types
 	public static final int TYPE_TEXT = 1;
 	public static final int TYPE_IMAGE = 2;
 	
+	// image formats
+	public static final int IMAGE_FORMAT_PNG = 0;
+	public static final int IMAGE_FORMAT_PEBBLE_1BIT = 1;
+	public static final int IMAGE_FORMAT_PEBBLE_64_COLOUR = 2;
+	
+	public static final int PEBBLE_SCREEN_WIDTH = 144;
+	public static final int PEBBLE_SCREEN_HEIGHT = 168;
+	
 	private static final String PEBBLE_CANVAS_PACKAGE = "com.pennas.pebblecanvas";
 	private static final String PEBBLE_CANVAS_PLUGIN_RECEIVER = PEBBLE_CANVAS_PACKAGE + ".plugin.PluginReceiver";
 	
 	public static final int NO_VALUE = -999;
+	// hot-path logging. off unless the plugin turns it on (e.g. for debug builds)
+	static boolean debug_log = false;
+	private static volatile BroadcastObserver broadcast_observer;
+	static final int NO_SLOT = -1;
 	private static ArrayList<PluginDefinition> stored_defs;
+	private static SparseArray<PluginDefinition> stored_defs_by_id;
+	// definition broadcasts are built once, and only rebuilt if get_plugin_definitions output changes
+	private static ArrayList<Intent> definition_intents;
+	private static String definitions_signature;
+	private static boolean definitions_stale = false;
+	private static String plugin_version;
+	// work queue keys for definition and batch requests, and cold start warm-up (single update requests are keyed by def ID)
+	private static final int WORK_KEY_DEFINITIONS = Integer.MIN_VALUE;
+	private static final int WORK_KEY_BATCH = Integer.MIN_VALUE + 1;
+	private static final int WORK_KEY_WARM_UP = Integer.MIN_VALUE + 2;
+	// cold start: set by the first request this process receives, cleared by the first reply
+	private static volatile boolean warm_up_started = false;
+	private static volatile boolean first_reply_pending = false;
+	private static long first_request_at;
 	
 	@Override
 	/**
 	 * BroadcastReceiver which will receive messages from Canvas, and process them before calling the plugin callback methods as required
 	 */
-	public final void onReceive(Context context, Intent intent) {
+	public final void onReceive(final Context context, final Intent intent) {
 		//Log.i(ABS_LOG_TAG, "onReceive: " + intent.getAction());
+		if (!warm_up_started) {
+			start_warm_up(context);
+		}
+		if (!process_in_background()) {
+			process(context, intent);
+			return;
+		}
+		
+		// replies for each definition stay in request order
+		int key = WORK_KEY_DEFINITIONS;
+		if (CANVAS_ACTION_REQUEST_UPDATE.equals(intent.getAction())) {
+			key = intent.hasExtra(CANVAS_VALUE_BATCH) ? WORK_KEY_BATCH : intent.getIntExtra(CANVAS_DEFINITION_ID, NO_VALUE);
+		}
+		final long queued = PluginStats.start();
+		PluginWorkQueue.get().submit(this, key, new Runnable() {
+			@Override
+			public void run() {
+				PluginStats.end(PluginStats.STAGE_QUEUE_WAIT, queued);
+				process(context, intent);
+			}
+		});
+	}
+	
+	// the first request after a cold start: let the plugin load its state, and build definitions, in the background
+	// alongside it. the request waits only for whichever of those it actually needs and which isn't finished yet
+	private final void start_warm_up(Context context) {
+		synchronized (PebbleCanvasPlugin.class) {
+			if (warm_up_started) return;
+			warm_up_started = true;
+			first_request_at = PluginStats.start();
+			first_reply_pending = true;
+		}
+		final Context app_context = context.getApplicationContext();
+		PluginWorkQueue.get().submit(WORK_KEY_WARM_UP, new Runnable() {
+			@Override
+			public void run() {
+				long start = PluginStats.start();
+				on_cold_start(app_context);
+				get_definition_intents(app_context);
+				PluginStats.end(PluginStats.STAGE_WARM_UP, start);
+			}
+		});
+	}
+	
+	private final void process(Context context, Intent intent) {
+		long start = PluginStats.start();
+		dispatch(context, intent);
+		PluginStats.end(PluginStats.STAGE_RECEIVE, start);
+	}
+	
+	private final void dispatch(Context context, Intent intent) {
 		// Canvas requested definitions - send them
 		if (intent.getAction().equals(CANVAS_ACTION_REQUEST_DEFINITIONS)) {
-			Log.i(ABS_LOG_TAG, "defs");
-			if (stored_defs == null) {
-				stored_defs = get_plugin_definitions(context);
-			}
-			if (stored_defs == null) return;
-			for (PluginDefinition def : stored_defs) {
-				send_definition(def, context);
+			if (debug_log) Log.i(ABS_LOG_TAG, "defs");
+			ArrayList<Intent> intents = get_definition_intents(context);
+			if (intents == null) return;
+			for (Intent def_intent : intents) {
+				send_broadcast(context, def_intent);
 			}
 		// Canvas requested values for a specific plugin - send them
 		} else if (intent.getAction().equals(CANVAS_ACTION_REQUEST_UPDATE)) {
-			Log.i(ABS_LOG_TAG, "update");
+			if (debug_log) Log.i(ABS_LOG_TAG, "update");
 			String pkg = intent.getStringExtra(CANVAS_DEFINITION_PACKAGE);
 			if (pkg == null) return;
 			if (!pkg.equals(context.getPackageName())) return;
 			
-			if (stored_defs == null) {
-				Log.i(ABS_LOG_TAG, "call get_plugin_definitions");
-				stored_defs = get_plugin_definitions(context);
-			}
-			if (stored_defs == null) {
+			if (get_stored_defs(context) == null) {
 				Log.i(ABS_LOG_TAG, "stored_defs == null");
 				return;
 			}
 			
+			// version 3 host asking for several definitions at once
+			ArrayList<Bundle> batch = intent.getParcelableArrayListExtra(CANVAS_VALUE_BATCH);
+			if (batch != null) {
+				send_values_batch(batch, context);
+				return;
+			}
+			
 			// which id to get value of?
 			
 			int def_id = intent.getIntExtra(CANVAS_DEFINITION_ID, NO_VALUE);
@@ -100,41 +206,292 @@ public abstract class PebbleCanvasPlugin extends BroadcastReceiver {
 				return;
 			}
 			
+			Bundle value = get_value(def_id, intent.getExtras(), context);
+			if (value == null) return;
+			final Intent reply = new Intent(CANVAS_ACTION_UPDATE);
+			reply.putExtras(value);
+			reply.putExtra(CANVAS_DEFINITION_PACKAGE, context.getPackageName());
+			reply.setClassName(PEBBLE_CANVAS_PACKAGE, PEBBLE_CANVAS_PLUGIN_RECEIVER);
+			send_broadcast(context, reply);
+		} else if (intent.getAction().equals(ACTION_DUMP_STATS)) {
+			if (!debug_log) return;
+			dump_stats(context);
+		}
+	}
+	
+	private static void send_broadcast(Context context, Intent intent) {
+		BroadcastObserver observer = broadcast_observer;
+		if (observer != null) {
+			observer.on_broadcast(intent);
+		}
+		long start = PluginStats.start();
+		context.sendBroadcast(intent);
+		PluginStats.end(PluginStats.STAGE_BROADCAST, start);
+		
+		if (first_reply_pending && CANVAS_ACTION_UPDATE.equals(intent.getAction())) {
+			long first_request;
+			synchronized (PebbleCanvasPlugin.class) {
+				if (!first_reply_pending) return;
+				first_reply_pending = false;
+				first_request = first_request_at;
+			}
+			PluginStats.end(PluginStats.STAGE_FIRST_REPLY, first_request);
+			Log.i(ABS_LOG_TAG, "first reply after " + ((System.nanoTime() - first_request) / 1000000) + "ms");
+		}
+	}
+	
+	private final void dump_stats(Context context) {
+		PluginWorkQueue queue = PluginWorkQueue.get();
+		StringBuilder sb = new StringBuilder();
+		sb.append(PluginStats.dump());
+		sb.append("image cache: ").append(image_cache).append('\n');
+		sb.append(ImagePrefetcher.get_stats()).append('\n');
+		sb.append(NotifyScheduler.get_stats()).append('\n');
+		sb.append(BitmapDecoder.get_stats()).append('\n');
+		sb.append(TextPolicy.get_stats()).append('\n');
+		sb.append("mask plans hits = ").append(MaskPlan.get_hits()).append(" misses = ").append(MaskPlan.get_misses()).append('\n');
+		sb.append("work queue pending = ").append(queue.get_pending()).append(" max = ").append(queue.get_max_pending())
+		  .append(" dropped = ").append(queue.get_dropped()).append('\n');
+		ImageStore store = get_image_store(context);
+		if (store != null) {
+			sb.append("image store writes = ").append(store.get_writes()).append(" reuses = ").append(store.get_reuses()).append('\n');
+		}
+		String authority = get_image_provider_authority();
+		if (authority != null) {
+			store = get_private_image_store(context, authority);
+			sb.append("private image store writes = ").append(store.get_writes()).append(" reuses = ").append(store.get_reuses()).append('\n');
+		}
+		String extra = get_debug_stats();
+		if (extra != null) {
+			sb.append(extra).append('\n');
+		}
+		String stats = sb.toString();
+		
+		for (String line : stats.split("\n")) {
+			Log.i(ABS_LOG_TAG, line);
+		}
+		File dir = context.getExternalFilesDir(null);
+		if (dir == null) return;
+		FileOutputStream out = null;
+		try {
+			out = new FileOutputStream(new File(dir, STATS_FILENAME));
+			out.write(stats.getBytes());
+		} catch (IOException e) {
+			Log.i(ABS_LOG_TAG, e.toString());
+		} finally {
+			try {
+				if (out != null) {
+					out.close();
+				}
+			} catch (IOException e) { /* */ }
+		}
+	}
+	
+	/**
+	 * Turn on logging of every request, reply and notification. Off by default, as building the log strings
+	 * costs time on every request. Typically: set_debug_logging(BuildConfig.DEBUG)
+	 * 
+	 * @param enabled true to log
+	 */
+	public static final void set_debug_logging(boolean enabled) {
+		debug_log = enabled;
+	}
+	
+	/**
+	 * Debug/load testing only: see every broadcast sent to Canvas
+	 * 
+	 * @param observer Observer, or null to remove
+	 */
+	public static final void set_broadcast_observer(BroadcastObserver observer) {
+		broadcast_observer = observer;
+	}
+	
+	// all requested values go back in a single broadcast
+	private final void send_values_batch(ArrayList<Bundle> batch, Context context) {
+		if (debug_log) Log.i(ABS_LOG_TAG, "send_values_batch: " + batch.size());
+		ArrayList<Bundle> values = new ArrayList<Bundle>(batch.size());
+		for (Bundle request : batch) {
+			int def_id = request.getInt(CANVAS_DEFINITION_ID, NO_VALUE);
+			if (def_id == NO_VALUE) continue;
+			Bundle value = get_value(def_id, request, context);
+			if (value != null) {
+				values.add(value);
+			}
+		}
+		
+		final Intent intent = new Intent(CANVAS_ACTION_UPDATE);
+		intent.putExtra(CANVAS_DEFINITION_PACKAGE, context.getPackageName());
+		intent.putParcelableArrayListExtra(CANVAS_VALUE_BATCH, values);
+		intent.setClassName(PEBBLE_CANVAS_PACKAGE, PEBBLE_CANVAS_PLUGIN_RECEIVER);
+		send_broadcast(context, intent);
+	}
+	
+	// value fields for one definition, or null if no reply should be sent
+	private final Bundle get_value(int def_id, Bundle request, Context context) {
+		PluginDefinition def;
+		synchronized (PebbleCanvasPlugin.class) {
+			def = stored_defs_by_id.get(def_id);
+		}
+		if (def instanceof TextPluginDefinition) {
+			// which format masks are required?
+			ArrayList<String> format_masks = request.getStringArrayList(CANVAS_VALUE_FORMAT_MASKS);
+			if (format_masks == null) return null;
+			
+			boolean accept_delta = request.getBoolean(CANVAS_VALUE_ACCEPT_DELTA, false);
+			boolean resync = request.getBoolean(CANVAS_VALUE_FULL_RESYNC, false);
+			return get_value_string((TextPluginDefinition) def, format_masks, context, accept_delta && !resync);
+		} else if (def instanceof ImagePluginDefinition) {
+			String params = request.getString(CANVAS_VALUE_IMAGE_PARAMS);
+			boolean accept_uri = request.getBoolean(CANVAS_VALUE_ACCEPT_IMAGE_URI, false);
+			return get_value_image((ImagePluginDefinition) def, context, params, accept_uri);
+		}
+		return null;
+	}
+	
+	// stale definitions are still fine for answering updates: only examples etc change
+	private final ArrayList<PluginDefinition> get_stored_defs(Context context) {
+		synchronized (PebbleCanvasPlugin.class) {
+			if (stored_defs == null) {
+				if (debug_log) Log.i(ABS_LOG_TAG, "call get_plugin_definitions");
+				set_stored_defs(get_plugin_definitions(context));
+			}
+			return stored_defs;
+		}
+	}
+	
+	private static void set_stored_defs(ArrayList<PluginDefinition> defs) {
+		SparseArray<PluginDefinition> previous_by_id = stored_defs_by_id;
+		stored_defs = defs;
+		definition_intents = null;
+		definitions_signature = null;
+		if (stored_defs != null) {
+			stored_defs_by_id = new SparseArray<PluginDefinition>(stored_defs.size());
 			for (PluginDefinition def : stored_defs) {
-				if (def.id == def_id) {
-					if (def instanceof TextPluginDefinition) {
-						// which format masks are required?
-						ArrayList<String> format_masks = intent.getStringArrayListExtra(CANVAS_VALUE_FORMAT_MASKS);
-						if (format_masks == null) return;
-						
-						send_value_string(def_id, format_masks, context);
-					} else if (def instanceof ImagePluginDefinition) {
-						String params = intent.getStringExtra(CANVAS_VALUE_IMAGE_PARAMS);
-						send_value_image(def_id, context, params);
-					}
-					break;
-				} // def id
-			} // for
+				stored_defs_by_id.put(def.id, def);
+				if (def instanceof TextPluginDefinition) {
+					((TextPluginDefinition) def).build_resolver_slots();
+				}
+			}
+		}
+		
+		// mask plans (and the values last sent for them) survive changes to examples, default text etc
+		if ( (stored_defs != null) && (previous_by_id != null) ) {
+			for (int i = 0; i < previous_by_id.size(); i++) {
+				PluginDefinition previous = previous_by_id.valueAt(i);
+				PluginDefinition def = stored_defs_by_id.get(previous.id);
+				if (!same_plan_structure(previous, def)) {
+					MaskPlan.clear(previous.id);
+				}
+			}
+		}
+	}
+	
+	// everything a MaskPlan depends on: type, format masks and their resolvers
+	private static boolean same_plan_structure(PluginDefinition previous, PluginDefinition def) {
+		if (def == null) return false;
+		if (!(previous instanceof TextPluginDefinition) || !(def instanceof TextPluginDefinition)) {
+			return previous.getClass() == def.getClass();
+		}
+		TextPluginDefinition previous_text = (TextPluginDefinition) previous;
+		TextPluginDefinition text = (TextPluginDefinition) def;
+		if (previous_text.format_masks == null) {
+			if (text.format_masks != null) return false;
+		} else if (!previous_text.format_masks.equals(text.format_masks)) {
+			return false;
+		}
+		int n = (text.resolver_slots == null) ? 0 : text.resolver_slots.length;
+		int previous_n = (previous_text.resolver_slots == null) ? 0 : previous_text.resolver_slots.length;
+		if (n != previous_n) return false;
+		for (int i = 0; i < n; i++) {
+			MaskResolver resolver = text.resolver_slots[i];
+			MaskResolver previous_resolver = previous_text.resolver_slots[i];
+			if (resolver == null) {
+				if (previous_resolver != null) return false;
+			} else if ( (previous_resolver == null) || (resolver.getClass() != previous_resolver.getClass()) ) {
+				return false;
+			}
 		}
+		return true;
 	}
 	
-	private final void send_definition(PluginDefinition def, Context context) {
-		Log.i(ABS_LOG_TAG, "send_definition: " + def.id);
+	private final ArrayList<Intent> get_definition_intents(Context context) {
+		synchronized (PebbleCanvasPlugin.class) {
+			if (definitions_stale || (stored_defs == null)) {
+				definitions_stale = false;
+				if (debug_log) Log.i(ABS_LOG_TAG, "call get_plugin_definitions");
+				ArrayList<PluginDefinition> defs = get_plugin_definitions(context);
+				String signature = definitions_signature(defs);
+				if ( (stored_defs == null) || !signature.equals(definitions_signature) ) {
+					set_stored_defs(defs);
+					definitions_signature = signature;
+				}
+			}
+			if (stored_defs == null) return null;
+			
+			if (definition_intents == null) {
+				ArrayList<Intent> intents = new ArrayList<Intent>(stored_defs.size());
+				for (PluginDefinition def : stored_defs) {
+					intents.add(build_definition(def, context));
+				}
+				definition_intents = intents;
+				if (definitions_signature == null) {
+					definitions_signature = definitions_signature(stored_defs);
+				}
+			}
+			return definition_intents;
+		}
+	}
+	
+	// everything which goes into a definition broadcast
+	private static String definitions_signature(ArrayList<PluginDefinition> defs) {
+		if (defs == null) return "";
+		StringBuilder sb = new StringBuilder();
+		for (PluginDefinition def : defs) {
+			sb.append(def.id).append('|').append(def.name).append('|').append(def.params_description).append('|');
+			if (def instanceof TextPluginDefinition) {
+				TextPluginDefinition text_def = (TextPluginDefinition) def;
+				sb.append(text_def.format_masks).append('|').append(text_def.format_mask_descriptions).append('|')
+				  .append(text_def.format_mask_examples).append('|').append(text_def.default_format_string);
+			} else if (def instanceof ImagePluginDefinition) {
+				sb.append(((ImagePluginDefinition) def).image_format);
+			}
+			sb.append('\n');
+		}
+		return sb.toString();
+	}
+	
+	/**
+	 * Tell the SDK that get_plugin_definitions may now return something different (e.g. new format mask examples).
+	 * Definitions are fetched again the next time Canvas asks for them, and only rebuilt if they have changed
+	 */
+	public static final void invalidate_definitions() {
+		synchronized (PebbleCanvasPlugin.class) {
+			definitions_stale = true;
+		}
+	}
+	
+	private static String get_plugin_version(Context context) {
+		if (plugin_version == null) {
+			PackageManager manager = context.getPackageManager();
+			try {
+				PackageInfo info = manager.getPackageInfo(context.getPackageName(), 0);
+				plugin_version = info.versionName;
+			} catch (NameNotFoundException e) { /* */ }
+		}
+		return plugin_version;
+	}
+	
+	private static Intent build_definition(PluginDefinition def, Context context) {
+		if (debug_log) Log.i(ABS_LOG_TAG, "build_definition: " + def.id);
 		final Intent intent = new Intent(CANVAS_ACTION_DEFINITION);
 		intent.putExtra(CANVAS_DEFINITION_ID, def.id);
 		intent.putExtra(CANVAS_DEFINITION_NAME, def.name);
 		intent.putExtra(CANVAS_DEFINITION_PACKAGE, context.getPackageName());
 		intent.putExtra(CANVAS_DEFINITION_INTERFACE_VERSION, INTERFACE_VERSION);
+		intent.putExtra(CANVAS_DEFINITION_BATCH_INTERFACE_VERSION, BATCH_INTERFACE_VERSION);
 		intent.putExtra(CANVAS_DEFINITION_PARAMS_DESC, def.params_description);
 		
-		PackageManager manager = context.getPackageManager();
-		PackageInfo info;
-		String version = null;
-		try {
-			info = manager.getPackageInfo(context.getPackageName(), 0);
-			version = info.versionName;
-		} catch (NameNotFoundException e) { /* */ }
-		intent.putExtra(CANVAS_DEFINITION_PLUGIN_VERSION, version);
+		intent.putExtra(CANVAS_DEFINITION_PLUGIN_VERSION, get_plugin_version(context));
 		
 		if (def instanceof TextPluginDefinition) {
         	intent.putExtra(CANVAS_DEFINITION_TYPE, TYPE_TEXT);
@@ -145,79 +502,311 @@ public abstract class PebbleCanvasPlugin extends BroadcastReceiver {
         	intent.putExtra(CANVAS_DEFINITION_DEFAULT_FORMAT_STRING, text_def.default_format_string);
         } else if (def instanceof ImagePluginDefinition) {
         	intent.putExtra(CANVAS_DEFINITION_TYPE, TYPE_IMAGE);
+        	ImagePluginDefinition image_def = (ImagePluginDefinition) def;
+        	if (image_def.image_format != IMAGE_FORMAT_PNG) {
+        		intent.putExtra(CANVAS_DEFINITION_IMAGE_FORMAT, image_def.image_format);
+        	}
         }
         intent.setClassName(PEBBLE_CANVAS_PACKAGE, PEBBLE_CANVAS_PLUGIN_RECEIVER);
-        context.sendBroadcast(intent);
-	}
-	
-	private static final Pattern pat_param = Pattern.compile("(%.+?)#(.+?)#");
-	private final void send_value_string(int def_id, ArrayList<String> format_masks, Context context) {
-		Log.i(ABS_LOG_TAG, "send_value_string: " + def_id);
-		ArrayList<String> value_items = new ArrayList<String>();
-		for (String mask : format_masks) {
-			String params = null;
-			Matcher match = pat_param.matcher(mask);
-			if (match.find()) {
-				mask = match.group(1);
-				params = match.group(2);
+        return intent;
+	}
+	
+	private final Bundle get_value_string(TextPluginDefinition def, ArrayList<String> format_masks, Context context, boolean delta) {
+		int def_id = def.id;
+		if (debug_log) Log.i(ABS_LOG_TAG, "send_value_string: " + def_id);
+		MaskPlan plan = MaskPlan.get(def, format_masks);
+		final Bundle value = new Bundle();
+		value.putInt(CANVAS_DEFINITION_ID, def_id);
+		
+		// nothing notified since these masks were last sent: don't even resolve them (only for plugins which
+		// promise to notify on every change; others may be relying on canvas polling them)
+		int version = get_value_version(def_id);
+		if (delta && notifies_every_change() && plan.is_current(version)) {
+			value.putBoolean(CANVAS_VALUE_DELTA, true);
+			value.putBoolean(CANVAS_VALUE_UNCHANGED, true);
+			return value;
+		}
+		
+		long start = PluginStats.start();
+		int n = plan.masks.length;
+		String[] values = new String[n];
+		for (int i = 0; i < n; i++) {
+			int slot = plan.slots[i];
+			MaskResolver resolver = (slot == NO_SLOT) ? null : def.resolver_slots[slot];
+			if (resolver != null) {
+				values[i] = resolver.resolve(context, plan.params[i]);
+			} else {
+				values[i] = get_format_mask_value(def_id, plan.masks[i], context, plan.params[i]);
+			}
+			if (plan.policies[i] != null) {
+				values[i] = plan.policies[i].apply(values[i]);
 			}
-			value_items.add(get_format_mask_value(def_id, mask, context, params));
 		}
+		PluginStats.end(PluginStats.STAGE_MASK_RESOLVE, start);
+		String[] previous = plan.remember(values, version);
 		
-		final Intent intent = new Intent(CANVAS_ACTION_UPDATE);
-		intent.putExtra(CANVAS_DEFINITION_ID, def_id);
-		intent.putExtra(CANVAS_DEFINITION_PACKAGE, context.getPackageName());
-		intent.putExtra(CANVAS_VALUE_FORMAT_MASKS, format_masks);
-		intent.putExtra(CANVAS_VALUE_FORMAT_MASK_VALUES, value_items);
-		intent.setClassName(PEBBLE_CANVAS_PACKAGE, PEBBLE_CANVAS_PLUGIN_RECEIVER);
-        context.sendBroadcast(intent);
+		ArrayList<String> mask_items;
+		ArrayList<String> value_items;
+		if ( !delta || (previous == null) ) {
+			mask_items = format_masks;
+			value_items = new ArrayList<String>(n);
+			for (int i = 0; i < n; i++) {
+				value_items.add(values[i]);
+			}
+		} else {
+			value.putBoolean(CANVAS_VALUE_DELTA, true);
+			int[] changed = FormatMaskParser.changed_indices(previous, values);
+			if (changed == null) {
+				value.putBoolean(CANVAS_VALUE_UNCHANGED, true);
+				return value;
+			}
+			mask_items = new ArrayList<String>(changed.length);
+			value_items = new ArrayList<String>(changed.length);
+			for (int i : changed) {
+				mask_items.add(format_masks.get(i));
+				value_items.add(values[i]);
+			}
+		}
+		
+		value.putStringArrayList(CANVAS_VALUE_FORMAT_MASKS, mask_items);
+		value.putStringArrayList(CANVAS_VALUE_FORMAT_MASK_VALUES, value_items);
+		return value;
 	}
 	
-	private static int filename_i = 0;
-	private static final int NUM_FILES = 5;
-	private static final String FILENAME_PREFIX = "img_tmp_";
+	// bumped every time the plugin notifies canvas of an update
+	private static final SparseIntArray value_versions = new SparseIntArray();
 	
-	private final void send_value_image(int def_id, Context context, String params) {
-		final Intent intent = new Intent(CANVAS_ACTION_UPDATE);
-		intent.putExtra(CANVAS_DEFINITION_ID, def_id);
-		intent.putExtra(CANVAS_DEFINITION_PACKAGE, context.getPackageName());
-		intent.setClassName(PEBBLE_CANVAS_PACKAGE, PEBBLE_CANVAS_PLUGIN_RECEIVER);
-        Bitmap b = get_bitmap_value(def_id, context, params);
+	private static int get_value_version(int def_id) {
+		synchronized (value_versions) {
+			return value_versions.get(def_id);
+		}
+	}
+	
+	private static final int IMAGE_CACHE_BYTES = 2 * 1024 * 1024;
+	private static final RenderedImageCache image_cache = new RenderedImageCache(IMAGE_CACHE_BYTES);
+	private static ImageStore image_store;
+	private static ImageStore private_image_store;
+	// params of the last request for each image definition, for prefetching
+	private static final SparseArray<String> last_image_params = new SparseArray<String>();
+	
+	private final Bundle get_value_image(ImagePluginDefinition def, Context context, String params, boolean accept_uri) {
+		int def_id = def.id;
+		synchronized (PebbleCanvasPlugin.class) {
+			last_image_params.put(def_id, params);
+		}
+		final Bundle value = new Bundle();
+		value.putInt(CANVAS_DEFINITION_ID, def_id);
+		EncodedImage image = render_image(def, context, params);
 		
-		filename_i++;
-		if (filename_i >= NUM_FILES) {
-			filename_i = 0;
+		if (image == null) {
+			return value;
+		}
+		if (def.image_format != IMAGE_FORMAT_PNG) {
+			value.putInt(CANVAS_VALUE_IMAGE_FORMAT, def.image_format);
 		}
 		
-		if (b == null) {
-			context.sendBroadcast(intent);
-		} else {
-			// store on shared storage; don't send directly in intent
-			File f = new File(context.getExternalFilesDir(null), FILENAME_PREFIX + filename_i);
-			f.delete();
-			FileOutputStream fOut = null;
+		// app-private file, read by canvas through our provider
+		String authority = accept_uri ? get_image_provider_authority() : null;
+		if (authority != null) {
 			try {
-				fOut = new FileOutputStream(f);
-				b.compress(Bitmap.CompressFormat.PNG, 85, fOut);
-			    fOut.flush();
-			    
-			    Log.i(ABS_LOG_TAG, "send_value_image: " + def_id + " / " + f.getAbsolutePath());
-				intent.putExtra(CANVAS_VALUE_IMAGE, f.getAbsolutePath());
-				context.sendBroadcast(intent);
-			} catch (FileNotFoundException e) {
-				Log.i(ABS_LOG_TAG, e.toString());
+				File f = get_private_image_store(context, authority).store(image);
+				Uri uri = ImageProvider.get_uri(authority, f.getName());
+				context.grantUriPermission(PEBBLE_CANVAS_PACKAGE, uri, Intent.FLAG_GRANT_READ_URI_PERMISSION);
+				if (debug_log) Log.i(ABS_LOG_TAG, "send_value_image: " + def_id + " / " + uri);
+				value.putString(CANVAS_VALUE_IMAGE_URI, uri.toString());
+				return value;
 			} catch (IOException e) {
 				Log.i(ABS_LOG_TAG, e.toString());
-			} finally {
+			} catch (SecurityException e) {
+				// provider not declared with grantUriPermissions
+				Log.i(ABS_LOG_TAG, e.toString());
+			}
+		}
+		
+		// store on shared storage; don't send directly in intent
+		ImageStore store = get_image_store(context);
+		if (store == null) {
+			Log.i(ABS_LOG_TAG, "send_value_image: no external storage");
+			return null;
+		}
+		try {
+			File f = store.store(image);
+		    if (debug_log) Log.i(ABS_LOG_TAG, "send_value_image: " + def_id + " / " + f.getAbsolutePath());
+			value.putString(CANVAS_VALUE_IMAGE, f.getAbsolutePath());
+			return value;
+		} catch (IOException e) {
+			Log.i(ABS_LOG_TAG, e.toString());
+			return null;
+		}
+	}
+	
+	private static synchronized ImageStore get_image_store(Context context) {
+		if (image_store == null) {
+			File dir = context.getExternalFilesDir(null);
+			if (dir == null) return null;
+			image_store = new ImageStore(dir, null);
+		}
+		return image_store;
+	}
+	
+	private static synchronized ImageStore get_private_image_store(Context context, final String authority) {
+		if (private_image_store == null) {
+			final Context app_context = context.getApplicationContext();
+			private_image_store = new ImageStore(ImageProvider.get_dir(app_context), new ImageStore.Listener() {
+				@Override
+				public void on_deleted(String name) {
+					app_context.revokeUriPermission(ImageProvider.get_uri(authority, name), Intent.FLAG_GRANT_READ_URI_PERMISSION);
+				}
+			});
+		}
+		return private_image_store;
+	}
+	
+	// returns the encoded image for this def/params, from the cache if the plugin supplied a key
+	private final EncodedImage render_image(ImagePluginDefinition def, Context context, String params) {
+		String key = get_full_cache_key(def.id, context, params);
+		if (key != null) {
+			EncodedImage cached = image_cache.get(key);
+			if (cached != null) {
+				ImagePrefetcher.claim(key);
+				return cached;
+			}
+			// don't decode again if a prefetch is already doing it
+			EncodedImage prefetched = ImagePrefetcher.await(key);
+			if (prefetched != null) {
+				return prefetched;
+			}
+		}
+		return encode_image(def, context, params, key);
+	}
+	
+	private final String get_full_cache_key(int def_id, Context context, String params) {
+		String key = get_bitmap_cache_key(def_id, context, params);
+		if (key == null) return null;
+		return def_id + "/" + key;
+	}
+	
+	private final EncodedImage encode_image(ImagePluginDefinition def, Context context, String params, String key) {
+		int def_id = def.id;
+		long start = PluginStats.start();
+		Bitmap b = get_bitmap_value(def_id, context, params);
+		PluginStats.end(PluginStats.STAGE_DECODE, start);
+		if (b == null) return null;
+		
+		start = PluginStats.start();
+		byte[] data;
+		if (def.image_format == IMAGE_FORMAT_PNG) {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			b.compress(Bitmap.CompressFormat.PNG, 85, out);
+			data = out.toByteArray();
+		} else {
+			data = PebbleBitmapEncoder.encode(b, def.image_format, def.image_width, def.image_height);
+		}
+		on_bitmap_encoded(def_id, b);
+		
+		EncodedImage image = new EncodedImage(data);
+		PluginStats.end(PluginStats.STAGE_COMPRESS, start);
+		if (key != null) {
+			image_cache.put(key, image);
+		}
+		return image;
+	}
+	
+	/**
+	 * Start rendering the current image for an image definition in the background, so it is ready before Canvas asks for it
+	 * (e.g. as soon as the plugin knows its image has changed). Only possible if the plugin implements get_bitmap_cache_key,
+	 * and Canvas has requested this definition before (its params are reused).
+	 * 
+	 * Can be called from anywhere in the plugin process (e.g. a player broadcast receiver), so it takes the plugin's class:
+	 * one instance of it is kept for rendering
+	 * 
+	 * @param plugin_class Plugin receiver class to render with
+	 * @param def_id Plugin ID of the image definition
+	 * @param context Calling context
+	 */
+	public static final void prefetch_image(Class<? extends PebbleCanvasPlugin> plugin_class, final int def_id, Context context) {
+		final PebbleCanvasPlugin plugin = get_render_instance(plugin_class);
+		if (plugin == null) return;
+		final Context app_context = context.getApplicationContext();
+		ArrayList<PluginDefinition> defs = plugin.get_stored_defs(app_context);
+		if (defs == null) return;
+		final PluginDefinition def;
+		final String params;
+		synchronized (PebbleCanvasPlugin.class) {
+			def = stored_defs_by_id.get(def_id);
+			if ( !(def instanceof ImagePluginDefinition) ) return;
+			if (last_image_params.indexOfKey(def_id) < 0) return;
+			params = last_image_params.get(def_id);
+		}
+		
+		final String key = plugin.get_full_cache_key(def_id, app_context, params);
+		if (key == null) return;
+		final ImagePrefetcher.Task task = ImagePrefetcher.start(key);
+		if (task == null) return;
+		
+		// same key as requests for this def, so a request arriving now queues behind the render.
+		// if requests push it out of the queue, the key has to be released or it is never prefetched again
+		PluginWorkQueue.get().submit(def_id, new Runnable() {
+			@Override
+			public void run() {
+				EncodedImage image = null;
+				ImagePrefetcher.mark_running(task);
 				try {
-					if (fOut != null) {
-						fOut.close();
+					// state may have moved on since the prefetch was queued, or a request may already have rendered it
+					if ( key.equals(plugin.get_full_cache_key(def_id, app_context, params)) && (image_cache.get(key) == null) ) {
+						image = plugin.encode_image((ImagePluginDefinition) def, app_context, params, key);
 					}
-				} catch (IOException e) { /* */ }
+				} finally {
+					ImagePrefetcher.finish(key, task, image);
+				}
+			}
+		}, new Runnable() {
+			@Override
+			public void run() {
+				ImagePrefetcher.finish(key, task, null);
 			}
+		});
+	}
+	
+	// receivers are stateless and have a public no-arg constructor, so one per class will do for prefetching
+	private static final HashMap<Class<? extends PebbleCanvasPlugin>, PebbleCanvasPlugin> render_instances
+		= new HashMap<Class<? extends PebbleCanvasPlugin>, PebbleCanvasPlugin>();
+	
+	private static PebbleCanvasPlugin get_render_instance(Class<? extends PebbleCanvasPlugin> plugin_class) {
+		synchronized (render_instances) {
+			PebbleCanvasPlugin plugin = render_instances.get(plugin_class);
+			if (plugin == null) {
+				try {
+					plugin = plugin_class.newInstance();
+				} catch (InstantiationException e) {
+					Log.i(ABS_LOG_TAG, e.toString());
+					return null;
+				} catch (IllegalAccessException e) {
+					Log.i(ABS_LOG_TAG, e.toString());
+					return null;
+				}
+				render_instances.put(plugin_class, plugin);
+			}
+			return plugin;
 		}
 	}
 	
+	/**
+	 * @return Prefetch counters: started, served to a request, and requests which waited for one in flight
+	 */
+	public static final String get_prefetch_stats() {
+		return ImagePrefetcher.get_stats();
+	}
+	
+	/**
+	 * Cache of encoded images, shared by all plugin definitions in this process
+	 * 
+	 * @return The cache (exposes hit/miss/eviction counters)
+	 */
+	public static final RenderedImageCache get_image_cache() {
+		return image_cache;
+	}
+	
 	/**
 	 * Abstract class representing a plugin definition. Many of these may be provided by a single plugin application (or just one)
 	 * 
@@ -263,30 +852,111 @@ public abstract class PebbleCanvasPlugin extends BroadcastReceiver {
 		 * May use more than one format mask and static text, e.g. "SMS: %S Missed: %M"
 		 */
 		public String default_format_string;
+		/**
+		 * Optional: resolver providing the value of each format mask. Masks without a resolver (or if this is null)
+		 * are passed to {@link PebbleCanvasPlugin#get_format_mask_value}
+		 */
+		public ArrayList<MaskResolver> format_mask_resolvers;
+		
+		// format_masks index -> resolver, and mask -> index. built once when definitions are loaded
+		MaskResolver[] resolver_slots;
+		private HashMap<String, Integer> slot_by_mask;
+		
+		/**
+		 * Add a format mask, appending to each of the ArrayList fields
+		 * 
+		 * @param mask Format mask, in the format %m
+		 * @param description Description of format mask for the format mask editor
+		 * @param example Optional initial value
+		 * @param resolver Provides the value of the mask. May be null to use get_format_mask_value instead
+		 */
+		public void add_format_mask(String mask, String description, String example, MaskResolver resolver) {
+			if (format_masks == null) format_masks = new ArrayList<String>();
+			if (format_mask_descriptions == null) format_mask_descriptions = new ArrayList<String>();
+			if (format_mask_examples == null) format_mask_examples = new ArrayList<String>();
+			if (format_mask_resolvers == null) format_mask_resolvers = new ArrayList<MaskResolver>();
+			format_masks.add(mask);
+			format_mask_descriptions.add(description);
+			format_mask_examples.add(example);
+			format_mask_resolvers.add(resolver);
+		}
+		
+		void build_resolver_slots() {
+			int n = (format_masks == null) ? 0 : format_masks.size();
+			resolver_slots = new MaskResolver[n];
+			slot_by_mask = new HashMap<String, Integer>(n * 2);
+			for (int i = 0; i < n; i++) {
+				if ( (format_mask_resolvers != null) && (i < format_mask_resolvers.size()) ) {
+					resolver_slots[i] = format_mask_resolvers.get(i);
+				}
+				slot_by_mask.put(format_masks.get(i), i);
+			}
+		}
+		
+		int slot_of(String mask) {
+			if (slot_by_mask == null) return NO_SLOT;
+			Integer slot = slot_by_mask.get(mask);
+			return (slot == null) ? NO_SLOT : slot;
+		}
 	}
 	
 	/**
 	 * Abstract class representing an image plugin definition.
+	 * 
+	 * All fields are optional
 	 */
 	public final class ImagePluginDefinition extends PluginDefinition {
-		// no extra fields
+		/**
+		 * Encoding of images sent to Canvas: {@link PebbleCanvasPlugin#IMAGE_FORMAT_PNG} (default), or one of the
+		 * Pebble-native formats, which are resized, dithered and packed on the phone so Canvas doesn't need to convert them
+		 */
+		public int image_format = IMAGE_FORMAT_PNG;
+		/**
+		 * Maximum width of the encoded image (Pebble-native formats only). Aspect ratio is preserved
+		 */
+		public int image_width = PEBBLE_SCREEN_WIDTH;
+		/**
+		 * Maximum height of the encoded image (Pebble-native formats only). Aspect ratio is preserved
+		 */
+		public int image_height = PEBBLE_SCREEN_HEIGHT;
 	}
 	
 	/**
-	 * Notify Canvas that updates are available for the specified plugin def ID
+	 * Notify Canvas that updates are available for the specified plugin def ID.
+	 * 
+	 * If the plugin overrides notifies_every_change() to return true, this must be called whenever a text value changes:
+	 * hosts which accept delta replies are then told a mask list is unchanged if this hasn't been called since it was last sent.
+	 * 
+	 * Notifies for a def ID are rate limited (see set_notify_min_interval); calls within the interval are
+	 * folded into one, sent at the end of it
 	 * 
 	 * @param def_id Plugin ID for which update is available
 	 * @param context Calling context
 	 */
 	public static final void notify_canvas_updates_available(int def_id, Context context) {
-		Log.i(ABS_LOG_TAG, "notify_canvas_updates_available: " + def_id);
+		if (debug_log) Log.i(ABS_LOG_TAG, "notify_canvas_updates_available: " + def_id);
+		synchronized (value_versions) {
+			value_versions.put(def_id, value_versions.get(def_id) + 1);
+		}
 		if (context == null) return;
-		
+		NotifyScheduler.request(def_id, context);
+	}
+	
+	/**
+	 * Minimum time between update notifications for the same def ID. Default 500ms; 0 to send every notify
+	 * 
+	 * @param ms Interval in milliseconds
+	 */
+	public static final void set_notify_min_interval(long ms) {
+		NotifyScheduler.set_min_interval(ms);
+	}
+	
+	static void send_notify(int def_id, Context context) {
 		final Intent intent = new Intent(CANVAS_ACTION_NOTIFY_UPDATE);
 		intent.putExtra(CANVAS_DEFINITION_ID, def_id);
 		intent.putExtra(CANVAS_DEFINITION_PACKAGE, context.getPackageName());
 		intent.setClassName(PEBBLE_CANVAS_PACKAGE, PEBBLE_CANVAS_PLUGIN_RECEIVER);
-        context.sendBroadcast(intent);
+        send_broadcast(context, intent);
 	}
 	
 	/**
@@ -303,7 +973,7 @@ public abstract class PebbleCanvasPlugin extends BroadcastReceiver {
 		final Intent intent = new Intent(CANVAS_ACTION_SHOW_SCREEN);
 		intent.putExtra(CANVAS_VALUE_SCREEN_NAME, screen_name);
 		intent.setClassName(PEBBLE_CANVAS_PACKAGE, PEBBLE_CANVAS_PLUGIN_RECEIVER);
-        context.sendBroadcast(intent);
+        send_broadcast(context, intent);
 	}
 	
 	//
@@ -319,24 +989,113 @@ public abstract class PebbleCanvasPlugin extends BroadcastReceiver {
 	 */
 	protected abstract ArrayList<PluginDefinition> get_plugin_definitions(Context context);
 	/**
-	 * Canvas requests the current text value for a specific format mask
+	 * Canvas requests the current bitmap for this plugin
 	 * 
 	 * @param def_id ID of plugin definition which is being queried
-	 * @param format_mask Mask to return current value of
 	 * @param context Calling context
 	 * @param param User-entered parameter (if specified by plugin definition). Plugins should deal gracefully with this being null/empty
 	 * 
-	 * @return The current String value of the format mask
+	 * @return The current image value (Bitmap) of the format mask
 	 */
-	protected abstract String get_format_mask_value(int def_id, String format_mask, Context context, String param);
+	protected abstract Bitmap get_bitmap_value(int def_id, Context context, String param);
+	
+	//
+	// optional overrides:-
+	//
+	
 	/**
-	 * Canvas requests the current bitmap for this plugin
+	 * Optional: authority of this app's {@link ImageProvider}. When set, and Canvas says it can read content URIs,
+	 * images are served from app-private storage instead of being written to external storage.
+	 * Default is null (external storage only)
+	 * 
+	 * @return Provider authority, as declared in the manifest, or null
+	 */
+	protected String get_image_provider_authority() {
+		return null;
+	}
+	
+	/**
+	 * Optional: identify the image which get_bitmap_value would currently return, so that the encoded result can be cached.
+	 * Two calls returning the same key must produce the same image. Default is null (no caching)
+	 * 
+	 * @param def_id ID of plugin definition which is being queried
+	 * @param context Calling context
+	 * @param param User-entered parameter (if specified by plugin definition). May be null
+	 * 
+	 * @return Cache key, or null if the current image should not be cached
+	 */
+	protected String get_bitmap_cache_key(int def_id, Context context, String param) {
+		return null;
+	}
+	
+	/**
+	 * Canvas requests the current text value for a specific format mask.
+	 * Only called for masks which have no {@link MaskResolver} registered in their {@link TextPluginDefinition}
 	 * 
 	 * @param def_id ID of plugin definition which is being queried
+	 * @param format_mask Mask to return current value of
 	 * @param context Calling context
 	 * @param param User-entered parameter (if specified by plugin definition). Plugins should deal gracefully with this being null/empty
 	 * 
-	 * @return The current image value (Bitmap) of the format mask
+	 * @return The current String value of the format mask
 	 */
-	protected abstract Bitmap get_bitmap_value(int def_id, Context context, String param);
+	protected String get_format_mask_value(int def_id, String format_mask, Context context, String param) {
+		Log.i(ABS_LOG_TAG, "no resolver for mask '" + format_mask + "'");
+		return null;
+	}
+	
+	/**
+	 * Optional: process Canvas requests on a background worker (via goAsync) instead of the main thread.
+	 * If true, all plugin callbacks may be called from worker threads, and concurrently for different def IDs.
+	 * Default is false
+	 * 
+	 * @return true to process requests in the background
+	 */
+	protected boolean process_in_background() {
+		return false;
+	}
+	
+	/**
+	 * Optional: called once per process, on the plugin's work queue (see PluginWorkQueue), as soon as the first request from Canvas arrives
+	 * (i.e. usually just after a cold start). Load whatever state the first get_format_mask_value / get_bitmap_value
+	 * calls will need here, so that it happens in parallel with the SDK building definitions.
+	 * Those calls may still arrive before this has finished, so they must cope (e.g. by waiting on the same lock).
+	 * Default does nothing
+	 * 
+	 * @param context Application context
+	 */
+	protected void on_cold_start(Context context) {
+	}
+	
+	/**
+	 * Optional: return true if the plugin calls notify_canvas_updates_available every time any of its text values
+	 * changes. Delta requests for masks which haven't been notified since they were last sent are then answered as
+	 * unchanged without calling the plugin at all. Default is false: values are always resolved, and only the ones
+	 * which differ from last time are sent
+	 * 
+	 * @return true if every value change is notified
+	 */
+	protected boolean notifies_every_change() {
+		return false;
+	}
+	
+	/**
+	 * Optional: called once the bitmap returned by get_bitmap_value has been encoded, and is no longer needed by the SDK.
+	 * Plugins which decode with {@link BitmapDecoder} can hand it back with BitmapDecoder.release() for reuse.
+	 * Default does nothing (the bitmap is left for the GC, as the plugin may still be using it)
+	 * 
+	 * @param def_id ID of plugin definition the bitmap was for
+	 * @param bitmap Bitmap returned by get_bitmap_value
+	 */
+	protected void on_bitmap_encoded(int def_id, Bitmap bitmap) {
+	}
+	
+	/**
+	 * Optional: plugin-specific counters to include when stats are dumped (see {@link #ACTION_DUMP_STATS})
+	 * 
+	 * @return Stats text, or null
+	 */
+	protected String get_debug_stats() {
+		return null;
+	}
 }
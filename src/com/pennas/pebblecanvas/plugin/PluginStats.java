@@ -0,0 +1,108 @@
+package com.pennas.pebblecanvas.plugin;
+
+/**
+ * Allocation-free timers for each stage of the plugin pipeline, kept as fixed-bucket histograms.
+ * 
+ * Usage: long t = PluginStats.start(); ...; PluginStats.end(PluginStats.STAGE_DECODE, t);
+ * 
+ * Bucket n holds durations below 2^n microseconds, so percentiles are accurate to within a factor of 2
+ */
+public final class PluginStats {
+	public static final int STAGE_QUEUE_WAIT = 0;
+	public static final int STAGE_RECEIVE = 1;
+	public static final int STAGE_MASK_RESOLVE = 2;
+	public static final int STAGE_MEDIASTORE = 3;
+	public static final int STAGE_DECODE = 4;
+	public static final int STAGE_COMPRESS = 5;
+	public static final int STAGE_FILE_WRITE = 6;
+	public static final int STAGE_BROADCAST = 7;
+	public static final int STAGE_PERSIST = 8;
+	// once per process: warm-up work after a cold start, and first request received -> first reply sent
+	public static final int STAGE_WARM_UP = 9;
+	public static final int STAGE_FIRST_REPLY = 10;
+	private static final int NUM_STAGES = 11;
+	private static final String[] STAGE_NAMES = {
+		"queue_wait", "receive", "mask_resolve", "mediastore", "decode", "compress", "file_write", "broadcast", "persist",
+		"warm_up", "first_reply" };
+	
+	// up to 2^26us (~67s); anything longer goes in the last bucket
+	private static final int NUM_BUCKETS = 27;
+	
+	private static final long[][] buckets = new long[NUM_STAGES][NUM_BUCKETS];
+	private static final long[] counts = new long[NUM_STAGES];
+	private static final long[] total_us = new long[NUM_STAGES];
+	private static final long[] max_us = new long[NUM_STAGES];
+	
+	private PluginStats() { }
+	
+	public static long start() {
+		return System.nanoTime();
+	}
+	
+	public static void end(int stage, long start) {
+		record(stage, (System.nanoTime() - start) / 1000);
+	}
+	
+	public static void record(int stage, long us) {
+		if (us < 0) us = 0;
+		int bucket = Math.min(64 - Long.numberOfLeadingZeros(us), NUM_BUCKETS - 1);
+		synchronized (buckets) {
+			buckets[stage][bucket]++;
+			counts[stage]++;
+			total_us[stage] += us;
+			if (us > max_us[stage]) max_us[stage] = us;
+		}
+	}
+	
+	public static void reset() {
+		synchronized (buckets) {
+			for (int stage = 0; stage < NUM_STAGES; stage++) {
+				for (int i = 0; i < NUM_BUCKETS; i++) {
+					buckets[stage][i] = 0;
+				}
+				counts[stage] = 0;
+				total_us[stage] = 0;
+				max_us[stage] = 0;
+			}
+		}
+	}
+	
+	/**
+	 * @return Upper bound (us) of the bucket containing the given percentile, or 0 if nothing recorded
+	 */
+	public static long percentile(int stage, int percent) {
+		synchronized (buckets) {
+			long count = counts[stage];
+			if (count == 0) return 0;
+			long target = (count * percent + 99) / 100;
+			long seen = 0;
+			for (int i = 0; i < NUM_BUCKETS; i++) {
+				seen += buckets[stage][i];
+				if (seen >= target) {
+					return Math.min((1L << i), max_us[stage]);
+				}
+			}
+			return max_us[stage];
+		}
+	}
+	
+	/**
+	 * @return One line per stage: count, mean, p50, p99 and max (microseconds)
+	 */
+	public static String dump() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("stage count mean_us p50_us p99_us max_us\n");
+		for (int stage = 0; stage < NUM_STAGES; stage++) {
+			long count, total, max;
+			synchronized (buckets) {
+				count = counts[stage];
+				total = total_us[stage];
+				max = max_us[stage];
+			}
+			if (count == 0) continue;
+			sb.append(STAGE_NAMES[stage]).append(' ').append(count).append(' ').append(total / count).append(' ')
+			  .append(percentile(stage, 50)).append(' ').append(percentile(stage, 99)).append(' ').append(max).append('\n');
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,221 @@
+package com.pennas.pebblecanvas.plugin;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import android.content.BroadcastReceiver;
+import android.os.Build;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.util.Log;
+import android.util.SparseArray;
+
+/**
+ * Small bounded worker pool for processing broadcasts off the main thread, using goAsync() so the
+ * broadcast stays alive until the work is done.
+ * 
+ * Work submitted with the same key runs in submission order; work with different keys may run in parallel.
+ * Before Honeycomb (no goAsync) work is run immediately on the calling thread
+ */
+public final class PluginWorkQueue {
+	private static final String LOG_TAG = "CANV_PLUG";
+	private static final int THREADS = 2;
+	// oldest work for a key is dropped beyond this, rather than letting the backlog grow without limit
+	private static final int MAX_PENDING_PER_KEY = 8;
+	
+	private static final PluginWorkQueue instance = new PluginWorkQueue();
+	
+	private final ExecutorService pool = Executors.newFixedThreadPool(THREADS, new ThreadFactory() {
+		private int count = 0;
+		
+		@Override
+		public Thread newThread(final Runnable r) {
+			count++;
+			return new Thread(new Runnable() {
+				@Override
+				public void run() {
+					Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+					r.run();
+				}
+			}, "canvas-plugin-" + count);
+		}
+	});
+	private final SparseArray<KeyQueue> queues = new SparseArray<KeyQueue>();
+	private Handler handler;
+	
+	private int pending = 0;
+	private int max_pending = 0;
+	private int dropped = 0;
+	
+	public static PluginWorkQueue get() {
+		return instance;
+	}
+	
+	private PluginWorkQueue() { }
+	
+	/**
+	 * Run work in the background on behalf of a receiver. Should be called from onReceive; if the receiver was
+	 * called directly rather than for a broadcast (e.g. by a test harness) there is nothing to keep alive
+	 * 
+	 * @param receiver Receiver whose broadcast is being processed
+	 * @param key Work with the same key is run in order (e.g. plugin def ID)
+	 * @param work Work to run
+	 */
+	public void submit(BroadcastReceiver receiver, int key, Runnable work) {
+		if (Build.VERSION.SDK_INT < Build.VERSION_CODES.HONEYCOMB) {
+			work.run();
+			return;
+		}
+		enqueue(key, AsyncJob.create(receiver, work));
+	}
+	
+	/**
+	 * Run work in the background which isn't tied to a broadcast (e.g. prefetching)
+	 * 
+	 * @param key Work with the same key is run in order
+	 * @param work Work to run
+	 */
+	public void submit(int key, Runnable work) {
+		submit(key, work, null);
+	}
+	
+	/**
+	 * As submit(key, work), for work which must clean up if it never runs
+	 * 
+	 * @param dropped Run instead of work if work is dropped because its key's queue is full. May be null
+	 */
+	public void submit(int key, Runnable work, Runnable dropped) {
+		enqueue(key, new Job(work, dropped));
+	}
+	
+	private synchronized void enqueue(int key, Job job) {
+		KeyQueue queue = queues.get(key);
+		if (queue == null) {
+			queue = new KeyQueue();
+			queues.put(key, queue);
+		}
+		if (queue.jobs.size() >= MAX_PENDING_PER_KEY) {
+			Job oldest = queue.jobs.poll();
+			if (oldest.dropped != null) {
+				oldest.dropped.run();
+			}
+			oldest.done();
+			pending--;
+			dropped++;
+			Log.i(LOG_TAG, "work queue full for key " + key + ", dropped oldest (total dropped = " + dropped + ")");
+		}
+		queue.jobs.add(job);
+		pending++;
+		if (pending > max_pending) {
+			max_pending = pending;
+			Log.i(LOG_TAG, "work queue max depth = " + max_pending);
+		}
+		if (!queue.running) {
+			queue.running = true;
+			pool.execute(queue);
+		}
+	}
+	
+	// runs the jobs for one key, one at a time
+	private final class KeyQueue implements Runnable {
+		final ArrayDeque<Job> jobs = new ArrayDeque<Job>();
+		boolean running = false;
+		
+		@Override
+		public void run() {
+			while (true) {
+				Job job;
+				synchronized (PluginWorkQueue.this) {
+					job = jobs.poll();
+					if (job == null) {
+						running = false;
+						return;
+					}
+				}
+				try {
+					job.work.run();
+				} catch (RuntimeException e) {
+					Log.e(LOG_TAG, "work failed: " + e);
+				} finally {
+					job.done();
+					synchronized (PluginWorkQueue.this) {
+						pending--;
+					}
+				}
+			}
+		}
+	}
+	
+	private static class Job {
+		final Runnable work;
+		final Runnable dropped;
+		
+		Job(Runnable work, Runnable dropped) {
+			this.work = work;
+			this.dropped = dropped;
+		}
+		
+		void done() { }
+	}
+	
+	// kept separate so that PendingResult is only touched on Honeycomb+
+	private static final class AsyncJob extends Job {
+		private final BroadcastReceiver.PendingResult result;
+		
+		private AsyncJob(Runnable work, BroadcastReceiver.PendingResult result) {
+			super(work, null);
+			this.result = result;
+		}
+		
+		static Job create(BroadcastReceiver receiver, Runnable work) {
+			return new AsyncJob(work, receiver.goAsync());
+		}
+		
+		@Override
+		void done() {
+			// null if onReceive wasn't called for a real broadcast
+			if (result != null) {
+				result.finish();
+			}
+		}
+	}
+	
+	/**
+	 * One background looper for the whole plugin process, for timers and delayed work (rate limiting, batched writes,
+	 * observers). Work posted to it must be short: anything slow should be submitted to the pool from it instead
+	 * 
+	 * @return Handler on the shared background thread
+	 */
+	public synchronized Handler get_handler() {
+		if (handler == null) {
+			HandlerThread thread = new HandlerThread("canvas-plugin-timers", Process.THREAD_PRIORITY_BACKGROUND);
+			thread.start();
+			handler = new Handler(thread.getLooper());
+		}
+		return handler;
+	}
+	
+	/**
+	 * @return Number of jobs currently waiting or running
+	 */
+	public synchronized int get_pending() {
+		return pending;
+	}
+	
+	/**
+	 * @return Highest number of jobs waiting or running at once
+	 */
+	public synchronized int get_max_pending() {
+		return max_pending;
+	}
+	
+	/**
+	 * @return Number of jobs dropped because their key's queue was full
+	 */
+	public synchronized int get_dropped() {
+		return dropped;
+	}
+}
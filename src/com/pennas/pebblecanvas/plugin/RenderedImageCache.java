@@ -0,0 +1,82 @@
+package com.pennas.pebblecanvas.plugin;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded LRU cache of finished (already encoded) images, keyed by a plugin-supplied key.
+ *
+ * A hit means the image can be sent to Canvas without calling get_bitmap_value or compressing again
+ */
+public final class RenderedImageCache {
+	private final LinkedHashMap<String, EncodedImage> entries = new LinkedHashMap<String, EncodedImage>(16, 0.75f, true);
+	private final int max_bytes;
+	private int size_bytes = 0;
+
+	private int hits = 0;
+	private int misses = 0;
+	private int evictions = 0;
+
+	public RenderedImageCache(int max_bytes) {
+		this.max_bytes = max_bytes;
+	}
+
+	public synchronized EncodedImage get(String key) {
+		EncodedImage image = entries.get(key);
+		if (image == null) {
+			misses++;
+		} else {
+			hits++;
+		}
+		return image;
+	}
+
+	public synchronized void put(String key, EncodedImage image) {
+		// don't let one huge image flush everything else
+		if (image.data.length > max_bytes / 2) return;
+
+		EncodedImage old = entries.put(key, image);
+		if (old != null) {
+			size_bytes -= old.data.length;
+		}
+		size_bytes += image.data.length;
+
+		// access-ordered, so iteration starts at the least recently used entry
+		Iterator<Map.Entry<String, EncodedImage>> it = entries.entrySet().iterator();
+		while ( (size_bytes > max_bytes) && it.hasNext() ) {
+			Map.Entry<String, EncodedImage> eldest = it.next();
+			if (eldest.getKey().equals(key)) continue;
+			size_bytes -= eldest.getValue().data.length;
+			it.remove();
+			evictions++;
+		}
+	}
+
+	public synchronized void clear() {
+		entries.clear();
+		size_bytes = 0;
+	}
+
+	public synchronized int get_hits() {
+		return hits;
+	}
+
+	public synchronized int get_misses() {
+		return misses;
+	}
+
+	public synchronized int get_evictions() {
+		return evictions;
+	}
+
+	public synchronized int get_size_bytes() {
+		return size_bytes;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "entries = " + entries.size() + " bytes = " + size_bytes
+				+ " hits = " + hits + " misses = " + misses + " evictions = " + evictions;
+	}
+}
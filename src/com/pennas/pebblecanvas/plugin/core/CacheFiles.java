@@ -0,0 +1,51 @@
+package com.pennas.pebblecanvas.plugin.core;
+
+import java.io.File;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Naming and ordering for the files of the on-disk caches: names from a SHA-1 of their content or key,
+ * least recently used first by last modified time
+ */
+public final class CacheFiles {
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+	
+	private static final Comparator<File> OLDEST_FIRST = new Comparator<File>() {
+		@Override
+		public int compare(File a, File b) {
+			long diff = a.lastModified() - b.lastModified();
+			return (diff < 0) ? -1 : ((diff > 0) ? 1 : 0);
+		}
+	};
+	
+	private CacheFiles() { }
+	
+	/**
+	 * @return Lower case hex SHA-1 of data (or, without SHA-1, a weaker hash which is still safe in a file name)
+	 */
+	public static String sha1_hex(byte[] data) {
+		byte[] digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-1").digest(data);
+		} catch (NoSuchAlgorithmException e) {
+			// every android release has SHA-1; fall back to something weaker rather than crash
+			return Integer.toHexString(Arrays.hashCode(data)) + "_" + data.length;
+		}
+		char[] out = new char[digest.length * 2];
+		for (int i = 0; i < digest.length; i++) {
+			out[i * 2] = HEX[(digest[i] >> 4) & 0xf];
+			out[i * 2 + 1] = HEX[digest[i] & 0xf];
+		}
+		return new String(out);
+	}
+	
+	/**
+	 * Sort least recently modified first
+	 */
+	public static void sort_oldest_first(File[] files) {
+		Arrays.sort(files, OLDEST_FIRST);
+	}
+}
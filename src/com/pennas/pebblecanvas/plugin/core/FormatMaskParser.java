@@ -0,0 +1,57 @@
+package com.pennas.pebblecanvas.plugin.core;
+
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Splits format masks requested by Canvas into base mask and user param (%X#param#).
+ */
+public final class FormatMaskParser {
+	private static final Pattern pat_param = Pattern.compile("(%.+?)#(.+?)#");
+	
+	private FormatMaskParser() { }
+	
+	/**
+	 * @param format_masks Masks as sent by Canvas
+	 * @param masks Filled with the base mask for each entry (same length as format_masks)
+	 * @param params Filled with the param for each entry, or null if it has none
+	 */
+	public static void parse(List<String> format_masks, String[] masks, String[] params) {
+		int n = format_masks.size();
+		for (int i = 0; i < n; i++) {
+			String mask = format_masks.get(i);
+			Matcher match = pat_param.matcher(mask);
+			if (match.find()) {
+				masks[i] = match.group(1);
+				params[i] = match.group(2);
+			} else {
+				masks[i] = mask;
+				params[i] = null;
+			}
+		}
+	}
+	
+	/**
+	 * @return Indices of the values which differ between previous and values, or null if none do
+	 */
+	public static int[] changed_indices(String[] previous, String[] values) {
+		int n = 0;
+		int[] changed = null;
+		for (int i = 0; i < values.length; i++) {
+			if (!equal(values[i], previous[i])) {
+				if (changed == null) changed = new int[values.length];
+				changed[n++] = i;
+			}
+		}
+		if (changed == null) return null;
+		if (n == changed.length) return changed;
+		int[] result = new int[n];
+		System.arraycopy(changed, 0, result, 0, n);
+		return result;
+	}
+	
+	public static boolean equal(String a, String b) {
+		return (a == null) ? (b == null) : a.equals(b);
+	}
+}
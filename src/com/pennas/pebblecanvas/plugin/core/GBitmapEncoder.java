@@ -0,0 +1,136 @@
+package com.pennas.pebblecanvas.plugin.core;
+
+import java.util.Arrays;
+
+/**
+ * Quantizes, dithers and packs ARGB pixels into the Pebble's native GBitmap layout (1-bit or 64 colour).
+ */
+public final class GBitmapEncoder {
+	// GBitmap header: row_size_bytes, info_flags, bounds (x, y, w, h). all little-endian 16 bit
+	public static final int HEADER_SIZE = 12;
+	private static final int GBITMAP_VERSION = 1;
+	private static final int GBITMAP_FORMAT_1BIT = 0;
+	private static final int GBITMAP_FORMAT_8BIT = 1;
+	
+	// 64 colour palette has 4 levels per channel: 0, 85, 170, 255
+	private static final int LEVEL_STEP = 85;
+	// nearest palette level for every 8-bit channel value
+	private static final byte[] LEVEL_LUT = new byte[256];
+	static {
+		for (int v = 0; v < 256; v++) {
+			LEVEL_LUT[v] = (byte) ((v + LEVEL_STEP / 2) / LEVEL_STEP);
+		}
+	}
+	
+	private GBitmapEncoder() { }
+	
+	/**
+	 * Size of a w x h image once scaled (keeping aspect ratio) to fit within max_width x max_height
+	 * 
+	 * @return { width, height }
+	 */
+	public static int[] fit(int w, int h, int max_width, int max_height) {
+		if ( (w > max_width) || (h > max_height) ) {
+			if (w * max_height > h * max_width) {
+				h = Math.max(1, h * max_width / w);
+				w = max_width;
+			} else {
+				w = Math.max(1, w * max_height / h);
+				h = max_height;
+			}
+		}
+		return new int[] { w, h };
+	}
+	
+	// 1 bit per pixel, LSB first, rows padded to 32 bits. 1 = white
+	public static byte[] encode_1bit(int[] argb, int w, int h) {
+		int row_bytes = ((w + 31) / 32) * 4;
+		byte[] out = new byte[HEADER_SIZE + row_bytes * h];
+		write_header(out, row_bytes, GBITMAP_FORMAT_1BIT, w, h);
+		
+		// floyd-steinberg error, in 16ths, offset by one so x-1 never goes negative
+		int[] err_cur = new int[w + 2];
+		int[] err_next = new int[w + 2];
+		for (int y = 0; y < h; y++) {
+			int row = HEADER_SIZE + y * row_bytes;
+			for (int x = 0; x < w; x++) {
+				int p = argb[y * w + x];
+				int a = p >>> 24;
+				int lum = ( ((p >> 16) & 0xff) * 77 + ((p >> 8) & 0xff) * 150 + (p & 0xff) * 29 ) >> 8;
+				// composite transparent pixels onto white
+				lum = (lum * a + 255 * (255 - a)) / 255;
+				
+				int v = clamp(lum + err_cur[x + 1] / 16);
+				int level = (v >= 128) ? 1 : 0;
+				int e = v - level * 255;
+				err_cur[x + 2] += e * 7;
+				err_next[x] += e * 3;
+				err_next[x + 1] += e * 5;
+				err_next[x + 2] += e;
+				
+				if (level == 1) {
+					out[row + (x >> 3)] |= (byte) (1 << (x & 7));
+				}
+			}
+			int[] tmp = err_cur;
+			err_cur = err_next;
+			err_next = tmp;
+			Arrays.fill(err_next, 0);
+		}
+		return out;
+	}
+	
+	// 1 byte per pixel: 0bAARRGGBB
+	public static byte[] encode_8bit(int[] argb, int w, int h) {
+		int row_bytes = w;
+		byte[] out = new byte[HEADER_SIZE + row_bytes * h];
+		write_header(out, row_bytes, GBITMAP_FORMAT_8BIT, w, h);
+		
+		// floyd-steinberg error per channel (r, g, b interleaved), in 16ths
+		int[] err_cur = new int[(w + 2) * 3];
+		int[] err_next = new int[(w + 2) * 3];
+		int pos = HEADER_SIZE;
+		for (int y = 0; y < h; y++) {
+			for (int x = 0; x < w; x++) {
+				int p = argb[y * w + x];
+				int packed = LEVEL_LUT[p >>> 24] << 6;
+				for (int c = 0; c < 3; c++) {
+					int v = clamp( ((p >> (16 - c * 8)) & 0xff) + err_cur[(x + 1) * 3 + c] / 16 );
+					int level = LEVEL_LUT[v];
+					int e = v - level * LEVEL_STEP;
+					err_cur[(x + 2) * 3 + c] += e * 7;
+					err_next[x * 3 + c] += e * 3;
+					err_next[(x + 1) * 3 + c] += e * 5;
+					err_next[(x + 2) * 3 + c] += e;
+					packed |= level << (4 - c * 2);
+				}
+				out[pos++] = (byte) packed;
+			}
+			int[] tmp = err_cur;
+			err_cur = err_next;
+			err_next = tmp;
+			Arrays.fill(err_next, 0);
+		}
+		return out;
+	}
+	
+	private static void write_header(byte[] out, int row_bytes, int format, int w, int h) {
+		put_short(out, 0, row_bytes);
+		put_short(out, 2, (GBITMAP_VERSION << 12) | (format << 1));
+		put_short(out, 4, 0);
+		put_short(out, 6, 0);
+		put_short(out, 8, w);
+		put_short(out, 10, h);
+	}
+	
+	private static void put_short(byte[] out, int offset, int value) {
+		out[offset] = (byte) value;
+		out[offset + 1] = (byte) (value >> 8);
+	}
+	
+	private static int clamp(int v) {
+		if (v < 0) return 0;
+		if (v > 255) return 255;
+		return v;
+	}
+}
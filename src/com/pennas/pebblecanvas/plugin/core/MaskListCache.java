@@ -0,0 +1,45 @@
+package com.pennas.pebblecanvas.plugin.core;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Small LRU of values keyed by a mask list (as sent by Canvas), for one definition.
+ * 
+ * Not thread safe: callers lock around it
+ */
+public final class MaskListCache<V> {
+	private final LinkedHashMap<List<String>, V> entries;
+	private final int max_entries;
+	
+	public MaskListCache(int max_entries) {
+		this.max_entries = max_entries;
+		entries = new LinkedHashMap<List<String>, V>(max_entries, 0.75f, true);
+	}
+	
+	/**
+	 * @return Value for this mask list, or null
+	 */
+	public V get(List<String> masks) {
+		return entries.get(masks);
+	}
+	
+	/**
+	 * Add a value, dropping the least recently used one if full. The list is copied: the caller's belongs to the request
+	 */
+	public void put(List<String> masks, V value) {
+		entries.put(new ArrayList<String>(masks), value);
+		if (entries.size() > max_entries) {
+			Iterator<Map.Entry<List<String>, V>> it = entries.entrySet().iterator();
+			it.next();
+			it.remove();
+		}
+	}
+	
+	public int size() {
+		return entries.size();
+	}
+}
@@ -0,0 +1,33 @@
+package com.pennas.pebblecanvas.plugin.core;
+
+/**
+ * Reads named options from a user-entered plugin param of the form "key=value;key=value".
+ */
+public final class PluginParams {
+	private static final char SEP = ';';
+	private static final char ASSIGN = '=';
+	
+	private PluginParams() { }
+	
+	/**
+	 * @param param User-entered param. May be null
+	 * @param key Option name
+	 * 
+	 * @return Value of the option (trimmed), or null if not present
+	 */
+	public static String get(String param, String key) {
+		if (param == null) return null;
+		int len = param.length();
+		int start = 0;
+		while (start < len) {
+			int end = param.indexOf(SEP, start);
+			if (end < 0) end = len;
+			int eq = param.indexOf(ASSIGN, start);
+			if ( (eq > start) && (eq < end) && param.substring(start, eq).trim().equals(key) ) {
+				return param.substring(eq + 1, end).trim();
+			}
+			start = end + 1;
+		}
+		return null;
+	}
+}
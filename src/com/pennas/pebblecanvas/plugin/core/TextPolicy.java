@@ -0,0 +1,156 @@
+package com.pennas.pebblecanvas.plugin.core;
+
+import java.text.Normalizer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Shortens and transliterates text values for what the watch can display, from mask param options
+ * "max=N" (maximum length) and "charset=ascii|latin1" (characters outside it are transliterated, or replaced).
+ * 
+ * Results are cached per (value, policy), so the same title is only processed once
+ */
+public final class TextPolicy {
+	public static final String PARAM_MAX = "max";
+	public static final String PARAM_CHARSET = "charset";
+	public static final String CHARSET_ASCII = "ascii";
+	public static final String CHARSET_LATIN1 = "latin1";
+	
+	private static final int NO_MAX = -1;
+	private static final int LIMIT_ASCII = 0x7f;
+	private static final int LIMIT_LATIN1 = 0xff;
+	private static final int LIMIT_NONE = Character.MAX_CODE_POINT;
+	private static final String ELLIPSIS = "\u2026";
+	private static final String ELLIPSIS_ASCII = "...";
+	private static final char REPLACEMENT = '?';
+	private static final int CACHE_SIZE = 64;
+	
+	// common characters which don't decompose into a base letter + accent:
+	// sharp s, ae, o slash, oe, l stroke, d stroke, thorn, curly quotes, en/em dash, ellipsis
+	private static final String SPECIAL_CHARS = "\u00df\u00e6\u00c6\u00f8\u00d8\u0153\u0152\u0142\u0141\u0111\u0110\u00fe\u00de"
+			+ "\u2018\u2019\u201c\u201d\u2013\u2014\u2026";
+	private static final String[] SPECIAL_REPLACEMENTS = { "ss", "ae", "AE", "o", "O", "oe", "OE", "l", "L", "d", "D", "th", "TH", "'", "'", "\"", "\"", "-", "-", "..." };
+	
+	private static final LinkedHashMap<String, String> cache = new LinkedHashMap<String, String>(CACHE_SIZE, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+		
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+			return size() > CACHE_SIZE;
+		}
+	};
+	private static int hits = 0;
+	private static int misses = 0;
+	
+	private final int max_length;
+	private final int limit;
+	private final String cache_prefix;
+	
+	private TextPolicy(int max_length, int limit) {
+		this.max_length = max_length;
+		this.limit = limit;
+		this.cache_prefix = max_length + "/" + limit + "\u0000";
+	}
+	
+	/**
+	 * @param param User-entered mask param. May be null
+	 * 
+	 * @return Policy, or null if the param doesn't ask for one
+	 */
+	public static TextPolicy parse(String param) {
+		int max_length = NO_MAX;
+		String max = PluginParams.get(param, PARAM_MAX);
+		if (max != null) {
+			try {
+				max_length = Math.max(1, Integer.parseInt(max));
+			} catch (NumberFormatException e) { /* */ }
+		}
+		String charset = PluginParams.get(param, PARAM_CHARSET);
+		int limit = LIMIT_NONE;
+		if (CHARSET_ASCII.equalsIgnoreCase(charset)) {
+			limit = LIMIT_ASCII;
+		} else if (CHARSET_LATIN1.equalsIgnoreCase(charset)) {
+			limit = LIMIT_LATIN1;
+		}
+		if ( (max_length == NO_MAX) && (limit == LIMIT_NONE) ) return null;
+		return new TextPolicy(max_length, limit);
+	}
+	
+	public String apply(String value) {
+		if (value == null) return null;
+		String key = cache_prefix + value;
+		synchronized (cache) {
+			String result = cache.get(key);
+			if (result != null) {
+				hits++;
+				return result;
+			}
+			misses++;
+		}
+		String result = truncate(transliterate(value));
+		synchronized (cache) {
+			cache.put(key, result);
+		}
+		return result;
+	}
+	
+	private String transliterate(String value) {
+		if (limit == LIMIT_NONE) return value;
+		if (fits(value)) return value;
+		// compose first, so a letter sent as base letter + combining accent is handled like the precomposed one
+		// (kept as is if it fits, e.g. for latin1, otherwise reduced to the base letter)
+		value = Normalizer.normalize(value, Normalizer.Form.NFC);
+		
+		StringBuilder sb = new StringBuilder(value.length());
+		for (int i = 0; i < value.length(); ) {
+			int c = value.codePointAt(i);
+			i += Character.charCount(c);
+			if (c <= limit) {
+				sb.append((char) c);
+				continue;
+			}
+			// an accent left over which didn't compose: drop it, its base letter is already there
+			if (Character.getType(c) == Character.NON_SPACING_MARK) continue;
+			int special = SPECIAL_CHARS.indexOf(c);
+			if (special >= 0) {
+				sb.append(SPECIAL_REPLACEMENTS[special]);
+				continue;
+			}
+			// split an accented letter into base letter + combining accents, and keep what fits (the base letter)
+			String decomposed = Normalizer.normalize(new String(Character.toChars(c)), Normalizer.Form.NFD);
+			int len = sb.length();
+			for (int j = 0; j < decomposed.length(); j++) {
+				char d = decomposed.charAt(j);
+				if (d <= limit) sb.append(d);
+			}
+			if (sb.length() == len) {
+				sb.append(REPLACEMENT);
+			}
+		}
+		return sb.toString();
+	}
+	
+	private boolean fits(String value) {
+		for (int i = 0; i < value.length(); i++) {
+			if (value.charAt(i) > limit) return false;
+		}
+		return true;
+	}
+	
+	private String truncate(String value) {
+		if ( (max_length == NO_MAX) || (value.codePointCount(0, value.length()) <= max_length) ) return value;
+		String ellipsis = (limit == LIMIT_NONE) ? ELLIPSIS : ELLIPSIS_ASCII;
+		// no room for text and ellipsis: just cut, the result must not be longer than max
+		if (max_length <= ellipsis.length()) {
+			return value.substring(0, value.offsetByCodePoints(0, max_length));
+		}
+		int end = value.offsetByCodePoints(0, max_length - ellipsis.length());
+		return value.substring(0, end).trim() + ellipsis;
+	}
+	
+	public static String get_stats() {
+		synchronized (cache) {
+			return "text policy hits = " + hits + " misses = " + misses;
+		}
+	}
+}